@@ -1,5 +1,8 @@
 package ru.netology.cloudservice.advice;
 
+import org.apache.commons.fileupload.FileUploadBase;
+import org.apache.commons.fileupload.FileUploadException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.AuthenticationException;
@@ -8,6 +11,9 @@ import org.springframework.validation.BindException;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import ru.netology.cloudservice.exception.FileConflictException;
+import ru.netology.cloudservice.exception.ServiceOverloadedException;
+import ru.netology.cloudservice.exception.TooManyRequestsException;
 import ru.netology.cloudservice.model.response.ErrorResponse;
 
 import javax.validation.ValidationException;
@@ -18,6 +24,8 @@ import static org.springframework.http.HttpStatus.*;
 
 @RestControllerAdvice
 public class ExceptionHandlerAdvice {
+    private static final String RETRY_AFTER_SECONDS = "1";
+
     private final AtomicInteger idGenerator = new AtomicInteger();
 
     @ExceptionHandler({BadCredentialsException.class, UsernameNotFoundException.class})
@@ -50,6 +58,44 @@ public class ExceptionHandlerAdvice {
                 .body(new ErrorResponse(idGenerator.incrementAndGet(), ex.getMessage()));
     }
 
+    @ExceptionHandler(FileUploadBase.FileUploadIOException.class)
+    public ResponseEntity<ErrorResponse> fileUploadIOException(FileUploadBase.FileUploadIOException ex) {
+        return ResponseEntity
+                .status(isSizeLimitExceeded(ex.getCause()) ? PAYLOAD_TOO_LARGE : BAD_REQUEST)
+                .body(new ErrorResponse(idGenerator.incrementAndGet(), ex.getMessage()));
+    }
+
+    @ExceptionHandler(FileUploadException.class)
+    public ResponseEntity<ErrorResponse> fileUploadException(FileUploadException ex) {
+        return ResponseEntity
+                .status(isSizeLimitExceeded(ex) ? PAYLOAD_TOO_LARGE : BAD_REQUEST)
+                .body(new ErrorResponse(idGenerator.incrementAndGet(), ex.getMessage()));
+    }
+
+    @ExceptionHandler(FileConflictException.class)
+    public ResponseEntity<ErrorResponse> fileConflictException(FileConflictException ex) {
+        return ResponseEntity
+                .status(CONFLICT)
+                .body(new ErrorResponse(idGenerator.incrementAndGet(), ex.getMessage()));
+    }
+
+    @ExceptionHandler(ServiceOverloadedException.class)
+    public ResponseEntity<ErrorResponse> serviceOverloadedException(ServiceOverloadedException ex) {
+        return ResponseEntity
+                .status(SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .body(new ErrorResponse(idGenerator.incrementAndGet(), ex.getMessage()));
+    }
+
+    @ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<ErrorResponse> tooManyRequestsException(TooManyRequestsException ex) {
+        long retryAfterSeconds = Math.max(1, (ex.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity
+                .status(TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(new ErrorResponse(idGenerator.incrementAndGet(), ex.getMessage()));
+    }
+
     @ExceptionHandler(IOException.class)
     public ResponseEntity<ErrorResponse> ioException(IOException ex) {
         return ResponseEntity
@@ -57,4 +103,9 @@ public class ExceptionHandlerAdvice {
                 .body(new ErrorResponse(idGenerator.incrementAndGet(), ex.getMessage()));
     }
 
+    private static boolean isSizeLimitExceeded(Throwable ex) {
+        return ex instanceof FileUploadBase.FileSizeLimitExceededException
+                || ex instanceof FileUploadBase.SizeLimitExceededException;
+    }
+
 }
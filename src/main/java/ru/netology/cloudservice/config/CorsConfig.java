@@ -6,6 +6,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
+import ru.netology.cloudservice.controller.UserFilesController;
 
 import java.util.List;
 
@@ -20,6 +21,7 @@ public class CorsConfig {
         cors.setAllowedOriginPatterns(List.of("*"));
         cors.setAllowedMethods(List.of("*"));
         cors.setAllowedHeaders(List.of("*"));
+        cors.setExposedHeaders(List.of(UserFilesController.NEXT_CURSOR_HEADER));
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", cors);
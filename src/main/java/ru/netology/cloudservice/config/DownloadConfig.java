@@ -0,0 +1,80 @@
+package ru.netology.cloudservice.config;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import ru.netology.cloudservice.controller.UserFilesController;
+import ru.netology.cloudservice.service.DownloadLimiter;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Streams response bodies on a bounded pool instead of a thread per download.
+ * On timeout or client disconnect Spring MVC interrupts the writing task, and the
+ * download permit held by the request is released once async processing completes.
+ */
+@Configuration
+public class DownloadConfig implements WebMvcConfigurer, DisposableBean {
+
+    private final ThreadPoolTaskExecutor downloadExecutor;
+    private final AsyncTaskExecutor asyncTaskExecutor;
+    private final Duration timeout;
+
+    public DownloadConfig(
+            @Qualifier("virtualThreadExecutor") ObjectProvider<ExecutorService> virtualThreadExecutor,
+            @Value("${application.userfiles.download.max-concurrent:64}") int maxConcurrent,
+            @Value("${application.userfiles.download.timeout:PT30M}") Duration timeout
+    ) {
+        this.timeout = timeout;
+        ExecutorService virtualExecutor = virtualThreadExecutor.getIfAvailable();
+        if (virtualExecutor != null) {
+            this.downloadExecutor = null;
+            this.asyncTaskExecutor = new TaskExecutorAdapter(virtualExecutor);
+        } else {
+            this.downloadExecutor = new ThreadPoolTaskExecutor();
+            downloadExecutor.setThreadNamePrefix("download-");
+            downloadExecutor.setCorePoolSize(maxConcurrent);
+            downloadExecutor.setMaxPoolSize(maxConcurrent);
+            downloadExecutor.setQueueCapacity(maxConcurrent);
+            downloadExecutor.setAllowCoreThreadTimeOut(true);
+            downloadExecutor.initialize();
+            this.asyncTaskExecutor = downloadExecutor;
+        }
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(asyncTaskExecutor);
+        configurer.setDefaultTimeout(timeout.toMillis());
+        configurer.registerCallableInterceptors(new DownloadPermitReleasingInterceptor());
+    }
+
+    @Override
+    public void destroy() {
+        if (downloadExecutor != null) downloadExecutor.shutdown();
+    }
+
+    private static class DownloadPermitReleasingInterceptor implements CallableProcessingInterceptor {
+        @Override
+        public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+            Object permit = request.getAttribute(
+                    UserFilesController.DOWNLOAD_PERMIT_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+            if (permit instanceof DownloadLimiter.Permit) {
+                ((DownloadLimiter.Permit) permit).close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+package ru.netology.cloudservice.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import ru.netology.cloudservice.service.UserRateLimiter;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.security.Principal;
+
+@Configuration
+@RequiredArgsConstructor
+@EnableConfigurationProperties(RateLimitProperties.class)
+public class RateLimitConfig implements WebMvcConfigurer {
+
+    private final UserRateLimiter userRateLimiter;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new UserRateLimitInterceptor(userRateLimiter))
+                .addPathPatterns("/list", "/file", "/upload", "/upload/**");
+    }
+
+    @RequiredArgsConstructor
+    private static class UserRateLimitInterceptor implements HandlerInterceptor {
+        private final UserRateLimiter userRateLimiter;
+
+        @Override
+        public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+            // a finished streaming download is dispatched again, the request was already counted
+            if (request.getDispatcherType() == DispatcherType.ASYNC) return true;
+            Principal principal = request.getUserPrincipal();
+            if (principal != null) userRateLimiter.acquireRequest(principal);
+            return true;
+        }
+    }
+
+}
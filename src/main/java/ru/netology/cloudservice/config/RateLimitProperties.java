@@ -0,0 +1,32 @@
+package ru.netology.cloudservice.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-user limits for file operations. A user gets the limits of the first listed authority
+ * they hold, or the defaults. Zero rates mean no limit.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "application.userfiles.rate-limit")
+public class RateLimitProperties {
+
+    private Limit defaults = new Limit();
+    private Map<String, Limit> authorities = new LinkedHashMap<>();
+
+    @Getter
+    @Setter
+    public static class Limit {
+        private double requestsPerSecond;
+        private int requestBurst;
+        private DataSize bytesPerSecond = DataSize.ofBytes(0);
+        private DataSize byteBurst = DataSize.ofBytes(0);
+    }
+
+}
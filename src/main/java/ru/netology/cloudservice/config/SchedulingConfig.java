@@ -0,0 +1,13 @@
+package ru.netology.cloudservice.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Scheduled jobs run on the pool sized by {@code spring.task.scheduling.pool.size},
+ * so a long storage reconciliation does not hold back token purge and file reclaim.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,28 @@
+package ru.netology.cloudservice.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.netology.cloudservice.service.TokenRevocationBus;
+import ru.netology.cloudservice.service.impl.TokenRevocationBusLocalImpl;
+import ru.netology.cloudservice.service.impl.TokenRevocationBusPostgresImpl;
+
+import javax.sql.DataSource;
+
+@Configuration
+public class TokenRevocationBusConfig {
+
+    @Bean
+    @ConditionalOnProperty(value = "application.security.token.revocation-bus", havingValue = "local",
+            matchIfMissing = true)
+    public TokenRevocationBus localTokenRevocationBus() {
+        return new TokenRevocationBusLocalImpl();
+    }
+
+    @Bean(initMethod = "start")
+    @ConditionalOnProperty(value = "application.security.token.revocation-bus", havingValue = "postgres")
+    public TokenRevocationBus postgresTokenRevocationBus(DataSource dataSource) {
+        return new TokenRevocationBusPostgresImpl(dataSource);
+    }
+
+}
@@ -1,26 +1,80 @@
 package ru.netology.cloudservice.config;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.CachingUserDetailsService;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import ru.netology.cloudservice.repository.UserRepository;
+import ru.netology.cloudservice.service.impl.BCryptCostPasswordEncoder;
 import ru.netology.cloudservice.service.impl.JpaUserDetailsServiceImpl;
+import ru.netology.cloudservice.service.impl.UserCacheCaffeineImpl;
+import ru.netology.cloudservice.service.impl.UserDetailsPasswordServiceJpaImpl;
 
+import java.time.Duration;
+import java.util.Map;
+
+@Slf4j
 @Configuration
 public class UserDetailsConfig {
+    private static final String BCRYPT_ID = "bcrypt";
+
+    @Bean
+    public UserCache userCache(
+            @Value("${application.security.user-cache-size:10000}") long cacheSize,
+            @Value("${application.security.user-cache-ttl:PT1M}") Duration cacheTtl
+    ) {
+        return new UserCacheCaffeineImpl(cacheSize, cacheTtl);
+    }
 
     @Bean
     @ConditionalOnMissingBean
-    public UserDetailsService jpaUserDetailsService(UserRepository userRepository) {
-        return new JpaUserDetailsServiceImpl(userRepository);
+    public UserDetailsService jpaUserDetailsService(UserRepository userRepository, UserCache userCache) {
+        CachingUserDetailsService cachingUserDetailsService =
+                new CachingUserDetailsService(new JpaUserDetailsServiceImpl(userRepository));
+        cachingUserDetailsService.setUserCache(userCache);
+        return cachingUserDetailsService;
     }
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return PasswordEncoderFactories.createDelegatingPasswordEncoder();
+    public UserDetailsPasswordService userDetailsPasswordService(UserRepository userRepository, UserCache userCache) {
+        return new UserDetailsPasswordServiceJpaImpl(userRepository, userCache);
+    }
+
+    /**
+     * New hashes are bcrypt with the configured cost, and stored hashes with any other cost are rehashed
+     * on login. A zero cost is calibrated at startup to the largest value that hashes within the target
+     * duration on this host. That is allowed only for a single node, as nodes calibrated differently would
+     * keep rehashing each other's hashes; nodes sharing a database must set the same explicit cost.
+     * Hashes in other formats are still verified and reported as needing an upgrade.
+     */
+    @Bean
+    public PasswordEncoder passwordEncoder(
+            @Value("${application.security.password-encoding.bcrypt-strength:0}") int bcryptStrength,
+            @Value("${application.security.password-encoding.min-bcrypt-strength:10}") int minBcryptStrength,
+            @Value("${application.security.password-encoding.target-duration:PT0.1S}") Duration targetDuration,
+            @Value("${application.security.password-encoding.single-node:false}") boolean singleNode
+    ) {
+        if (bcryptStrength <= 0 && !singleNode) {
+            throw new IllegalStateException("application.security.password-encoding.bcrypt-strength must be set "
+                    + "explicitly unless single-node is enabled");
+        }
+        int strength = bcryptStrength > 0
+                ? bcryptStrength
+                : BCryptCostPasswordEncoder.calibrateStrength(targetDuration, minBcryptStrength);
+        log.info("Password encoding: bcrypt strength {}", strength);
+
+        DelegatingPasswordEncoder passwordEncoder =
+                new DelegatingPasswordEncoder(BCRYPT_ID, Map.of(BCRYPT_ID, new BCryptCostPasswordEncoder(strength)));
+        passwordEncoder.setDefaultPasswordEncoderForMatches(PasswordEncoderFactories.createDelegatingPasswordEncoder());
+        return passwordEncoder;
     }
 
 }
@@ -1,17 +1,29 @@
 package ru.netology.cloudservice.config;
 
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.util.unit.DataSize;
 import ru.netology.cloudservice.repository.FileInfoRepository;
+import ru.netology.cloudservice.repository.UploadSessionRepository;
 import ru.netology.cloudservice.repository.UserRepository;
+import ru.netology.cloudservice.service.ChunkedUploadService;
 import ru.netology.cloudservice.service.FileContentStorage;
 import ru.netology.cloudservice.service.UserFilesService;
+import ru.netology.cloudservice.service.UserIdResolver;
+import ru.netology.cloudservice.service.impl.ChunkedUploadServiceJpaImpl;
+import ru.netology.cloudservice.service.impl.FileContentStorageCompressingImpl;
+import ru.netology.cloudservice.service.impl.FileContentStorageDeduplicatingImpl;
 import ru.netology.cloudservice.service.impl.FileContentStorageFileSystemImpl;
+import ru.netology.cloudservice.service.impl.FileSyncer;
+import ru.netology.cloudservice.service.impl.PendingContentUids;
 import ru.netology.cloudservice.service.impl.UserFilesServiceJpaImpl;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Duration;
 
 @Configuration
 public class UserFilesConfig {
@@ -19,17 +31,93 @@ public class UserFilesConfig {
     @Value("${application.userfiles.root-path}")
     String userFilesRoot;
 
+    @Value("${application.userfiles.deduplicate:false}")
+    boolean deduplicate;
+
+    @Value("${application.userfiles.shard-levels:0}")
+    int shardLevels;
+
+    @Value("${application.userfiles.durability.mode:none}")
+    String durabilityMode;
+
+    @Value("${application.userfiles.compression.enabled:false}")
+    boolean compressionEnabled;
+
+    @Value("${application.userfiles.compression.sample-size:64KB}")
+    DataSize compressionSampleSize;
+
+    @Value("${application.userfiles.compression.max-ratio:0.9}")
+    double compressionMaxRatio;
+
+    @Bean
+    public FileSyncer fileSyncer() {
+        switch (durabilityMode) {
+            case "none":
+                return FileSyncer.NONE;
+            case "file":
+                return FileSyncer.PER_FILE;
+            default:
+                throw new IllegalArgumentException("Unknown durability mode: " + durabilityMode);
+        }
+    }
+
     @Bean
     public FileContentStorage fileContentStorage() throws IOException {
-        return new FileContentStorageFileSystemImpl(Path.of(userFilesRoot));
+        FileContentStorage fileContentStorage = deduplicate
+                ? new FileContentStorageDeduplicatingImpl(Path.of(userFilesRoot), shardLevels, fileSyncer())
+                : new FileContentStorageFileSystemImpl(Path.of(userFilesRoot), shardLevels, fileSyncer());
+        return compressionEnabled
+                ? new FileContentStorageCompressingImpl(
+                        fileContentStorage, (int) compressionSampleSize.toBytes(), compressionMaxRatio)
+                : fileContentStorage;
+    }
+
+    @Value("${application.userfiles.upload.max-file-size:100MB}")
+    DataSize maxFileSize;
+
+    @Value("${application.userfiles.upload.max-request-size:101MB}")
+    DataSize maxRequestSize;
+
+    @Value("${application.userfiles.upload.max-chunk-size:64MB}")
+    DataSize maxChunkSize;
+
+    @Value("${application.userfiles.upload.max-session-size:10GB}")
+    DataSize maxSessionSize;
+
+    @Value("${application.userfiles.upload.session-ttl:P1D}")
+    Duration sessionTtl;
+
+    @Bean
+    public ServletFileUpload servletFileUpload() {
+        ServletFileUpload servletFileUpload = new ServletFileUpload();
+        servletFileUpload.setFileSizeMax(maxFileSize.toBytes());
+        servletFileUpload.setSizeMax(maxRequestSize.toBytes());
+        return servletFileUpload;
     }
 
     @Bean
     public UserFilesService userFilesService(
             UserRepository userRepository,
-            FileInfoRepository fileInfoRepository
+            UserIdResolver userIdResolver,
+            FileInfoRepository fileInfoRepository,
+            TransactionOperations transactionOperations,
+            PendingContentUids pendingContentUids
+    ) throws IOException {
+        return new UserFilesServiceJpaImpl(userRepository, userIdResolver, fileInfoRepository, fileContentStorage(),
+                transactionOperations, pendingContentUids);
+    }
+
+    @Bean
+    public ChunkedUploadService chunkedUploadService(
+            UserRepository userRepository,
+            UserIdResolver userIdResolver,
+            UploadSessionRepository uploadSessionRepository,
+            UserFilesService userFilesService,
+            TransactionOperations transactionOperations
     ) throws IOException {
-        return new UserFilesServiceJpaImpl(userRepository, fileInfoRepository, fileContentStorage());
+        return new ChunkedUploadServiceJpaImpl(userRepository, userIdResolver, uploadSessionRepository,
+                userFilesService, fileContentStorage(), transactionOperations,
+                maxChunkSize.toBytes(), maxSessionSize.toBytes(), sessionTtl);
     }
 
 }
@@ -1,5 +1,8 @@
 package ru.netology.cloudservice.config;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
@@ -8,6 +11,7 @@ import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.core.OAuth2AuthenticatedPrincipal;
 import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.jwt.JwtDecoder;
@@ -18,7 +22,10 @@ import org.springframework.security.oauth2.server.resource.web.DefaultBearerToke
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.web.servlet.HandlerExceptionResolver;
 import ru.netology.cloudservice.service.TokenRegistrar;
+import ru.netology.cloudservice.util.TokenDigest;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -54,20 +61,54 @@ public class WebSecurityConfig {
     }
 
     @Bean
-    public OpaqueTokenIntrospector opaqueTokenIntrospector(JwtDecoder jwtDecoder, TokenRegistrar tokenRegistrar) {
+    public OpaqueTokenIntrospector opaqueTokenIntrospector(
+            JwtDecoder jwtDecoder,
+            TokenRegistrar tokenRegistrar,
+            @Value("${application.security.token.cache-size:10000}") long principalCacheSize
+    ) {
+        Cache<String, OAuth2AuthenticatedPrincipal> principalCache = Caffeine.newBuilder()
+                .maximumSize(principalCacheSize)
+                .expireAfter(new PrincipalExpiry())
+                .build();
         return token -> {
             if (!tokenRegistrar.isRegistered(token)) {
                 throw new OAuth2IntrospectionException("Token is not registered.");
             }
-            Jwt jwt = jwtDecoder.decode(token);
-            List<GrantedAuthority> authoritiesList = jwt.getClaimAsStringList("scope")
-                    .stream()
-                    .map(SimpleGrantedAuthority::new)
-                    .collect(Collectors.toList());
-            return new DefaultOAuth2User(authoritiesList, jwt.getClaims(), "sub");
+            return principalCache.get(TokenDigest.of(token), tokenDigest -> decodePrincipal(jwtDecoder, token));
         };
     }
 
+    private static OAuth2AuthenticatedPrincipal decodePrincipal(JwtDecoder jwtDecoder, String token) {
+        Jwt jwt = jwtDecoder.decode(token);
+        List<GrantedAuthority> authoritiesList = jwt.getClaimAsStringList("scope")
+                .stream()
+                .map(SimpleGrantedAuthority::new)
+                .collect(Collectors.toList());
+        return new DefaultOAuth2User(authoritiesList, jwt.getClaims(), "sub");
+    }
+
+    private static class PrincipalExpiry implements Expiry<String, OAuth2AuthenticatedPrincipal> {
+
+        @Override
+        public long expireAfterCreate(String tokenDigest, OAuth2AuthenticatedPrincipal principal, long currentTime) {
+            Instant expiresAt = principal.getAttribute("exp");
+            if (expiresAt == null) return Long.MAX_VALUE;
+            return Math.max(0, Duration.between(Instant.now(), expiresAt).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(String tokenDigest, OAuth2AuthenticatedPrincipal principal,
+                                      long currentTime, long currentDuration) {
+            return expireAfterCreate(tokenDigest, principal, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String tokenDigest, OAuth2AuthenticatedPrincipal principal,
+                                    long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
     @Bean
     @ConditionalOnProperty("application.security.token.header")
     public BearerTokenResolver customBearerTokenResolver(
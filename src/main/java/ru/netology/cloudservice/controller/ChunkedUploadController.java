@@ -0,0 +1,71 @@
+package ru.netology.cloudservice.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+import ru.netology.cloudservice.model.request.UploadSessionRequest;
+import ru.netology.cloudservice.model.response.UploadSessionResponse;
+import ru.netology.cloudservice.service.ChunkedUploadService;
+import ru.netology.cloudservice.service.UserRateLimiter;
+import ru.netology.cloudservice.validation.ValidFileName;
+
+import javax.validation.Valid;
+import javax.validation.constraints.PositiveOrZero;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.Principal;
+
+@Validated
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/upload")
+public class ChunkedUploadController {
+
+    private final ChunkedUploadService chunkedUploadService;
+    private final UserRateLimiter userRateLimiter;
+
+    @PostMapping
+    public UploadSessionResponse createSession(
+            Principal principal,
+            @ValidFileName @RequestParam String filename,
+            @Valid @RequestBody UploadSessionRequest uploadSessionRequest
+    ) throws IOException {
+        return chunkedUploadService.createSession(principal.getName(), filename, uploadSessionRequest);
+    }
+
+    @GetMapping("/{uploadId}")
+    public UploadSessionResponse getSession(
+            Principal principal,
+            @PathVariable String uploadId
+    ) throws IOException {
+        return chunkedUploadService.findSession(principal.getName(), uploadId);
+    }
+
+    @PutMapping("/{uploadId}/{chunk}")
+    public void uploadChunk(
+            Principal principal,
+            @PathVariable String uploadId,
+            @PositiveOrZero @PathVariable int chunk,
+            InputStream inputStream
+    ) throws IOException {
+        chunkedUploadService.writeChunk(principal.getName(), uploadId, chunk,
+                userRateLimiter.limit(principal, inputStream));
+    }
+
+    @PostMapping("/{uploadId}/commit")
+    public void commit(
+            Principal principal,
+            @PathVariable String uploadId
+    ) throws IOException {
+        chunkedUploadService.commit(principal.getName(), uploadId);
+    }
+
+    @DeleteMapping("/{uploadId}")
+    public void abort(
+            Principal principal,
+            @PathVariable String uploadId
+    ) throws IOException {
+        chunkedUploadService.abort(principal.getName(), uploadId);
+    }
+
+}
@@ -1,40 +1,69 @@
 package ru.netology.cloudservice.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileUploadBase;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.support.MissingServletRequestPartException;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.netology.cloudservice.converter.FileContentDtoResponseEntityConverter;
 import ru.netology.cloudservice.model.dto.FileContentDto;
 import ru.netology.cloudservice.model.dto.FileInfoDto;
+import ru.netology.cloudservice.model.dto.FileInfoPageDto;
 import ru.netology.cloudservice.model.request.RenameRequest;
+import ru.netology.cloudservice.service.DownloadLimiter;
 import ru.netology.cloudservice.service.UserFilesService;
+import ru.netology.cloudservice.service.UserRateLimiter;
 import ru.netology.cloudservice.validation.ValidFileName;
 
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
+import javax.validation.ValidationException;
 import javax.validation.constraints.Positive;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.Principal;
 import java.util.List;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 @Validated
 @RestController
 @RequiredArgsConstructor
 public class UserFilesController {
     private static final String DEFAULT_FILES_LIST_LIMIT = "100";
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final String DOWNLOAD_PERMIT_ATTRIBUTE = UserFilesController.class.getName() + ".DOWNLOAD_PERMIT";
+    private static final String FILE_PART = "file";
+    private static final String HASH_PART = "hash";
+    private static final int MAX_HASH_LENGTH = 256;
 
     private final UserFilesService userFilesService;
     private final FileContentDtoResponseEntityConverter fileContentDtoResponseEntityConverter;
+    private final ServletFileUpload servletFileUpload;
+    private final DownloadLimiter downloadLimiter;
+    private final UserRateLimiter userRateLimiter;
 
     @GetMapping("/list")
-    public List<FileInfoDto> getFilesList(
+    public ResponseEntity<List<FileInfoDto>> getFilesList(
             Principal principal,
-            @Positive @RequestParam(name = "limit", defaultValue = DEFAULT_FILES_LIST_LIMIT) int limit
+            @Positive @RequestParam(name = "limit", defaultValue = DEFAULT_FILES_LIST_LIMIT) int limit,
+            @RequestParam(name = "cursor", required = false) String cursor
     ) throws IOException {
-        return userFilesService.findFilesList(principal.getName(), limit);
+        FileInfoPageDto page = userFilesService.findFilesPage(principal.getName(), limit, cursor);
+        ResponseEntity.BodyBuilder responseBuilder = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            responseBuilder.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return responseBuilder.body(page.getFiles());
     }
 
     @DeleteMapping("/file")
@@ -57,21 +86,111 @@ public class UserFilesController {
     @GetMapping(value = "/file")
     public ResponseEntity<StreamingResponseBody> downloadFile(
             Principal principal,
-            @ValidFileName @RequestParam String filename
+            @ValidFileName @RequestParam String filename,
+            @RequestHeader HttpHeaders requestHeaders,
+            HttpServletRequest request
     ) throws IOException {
-        FileContentDto fileContentDto = userFilesService.openFile(principal.getName(), filename);
-        return fileContentDtoResponseEntityConverter.from(fileContentDto);
+        DownloadLimiter.Permit permit = downloadLimiter.acquire(principal.getName());
+        try {
+            FileContentDto fileContentDto = userFilesService.openFile(principal.getName(), filename);
+            ResponseEntity<StreamingResponseBody> response =
+                    fileContentDtoResponseEntityConverter.from(fileContentDto, requestHeaders);
+            StreamingResponseBody body = response.getBody();
+            if (body == null) {
+                permit.close();
+                return response;
+            }
+            request.setAttribute(DOWNLOAD_PERMIT_ATTRIBUTE, permit);
+            return ResponseEntity.status(response.getStatusCode())
+                    .headers(response.getHeaders())
+                    .body(outputStream -> body.writeTo(userRateLimiter.limit(principal, outputStream)));
+        } catch (IOException | RuntimeException e) {
+            permit.close();
+            throw e;
+        }
     }
 
+    /**
+     * The multipart body is read as a stream and the file is stored as soon as its part is read,
+     * so a {@code hash} part must precede the {@code file} part: a non-empty {@code hash} part after
+     * it is rejected with 400 before the file is registered. Other parts after the file are ignored.
+     * The {@code hash} query parameter works with any part order.
+     */
     @PostMapping(value = "/file")
     public void uploadFile(
             Principal principal,
             @ValidFileName @RequestParam String filename,
-            @RequestPart MultipartFile file,
-            @RequestParam(defaultValue = "") String hash
-    ) throws IOException {
-        try (InputStream inputStream = file.getInputStream()) {
-            userFilesService.saveFile(principal.getName(), filename, hash, inputStream);
+            @RequestParam(defaultValue = "") String hash,
+            HttpServletRequest request
+    ) throws IOException, ServletException, FileUploadException {
+        FileItemIterator itemIterator = servletFileUpload.getItemIterator(request);
+        while (itemIterator.hasNext()) {
+            FileItemStream item = itemIterator.next();
+            try (InputStream inputStream = item.openStream()) {
+                if (item.isFormField() && HASH_PART.equals(item.getFieldName())) {
+                    hash = readHash(inputStream);
+                } else if (FILE_PART.equals(item.getFieldName())) {
+                    userFilesService.saveFile(principal.getName(), filename, hash,
+                            userRateLimiter.limit(principal, new FilePartInputStream(inputStream, itemIterator)));
+                    return;
+                }
+            }
+        }
+        throw new MissingServletRequestPartException(FILE_PART);
+    }
+
+    private static String readHash(InputStream inputStream) throws IOException {
+        byte[] hash = inputStream.readNBytes(MAX_HASH_LENGTH + 1);
+        if (hash.length > MAX_HASH_LENGTH) {
+            throw new ValidationException("hash: must be at most " + MAX_HASH_LENGTH + " bytes");
+        }
+        return new String(hash, UTF_8);
+    }
+
+    /**
+     * Reads the parts that follow the file once the file is read to the end, so the storage fails
+     * the upload on a late non-empty {@code hash} part instead of the service registering the file without it.
+     */
+    private static class FilePartInputStream extends FilterInputStream {
+        private final FileItemIterator itemIterator;
+        private boolean ended;
+
+        FilePartInputStream(InputStream inputStream, FileItemIterator itemIterator) {
+            super(inputStream);
+            this.itemIterator = itemIterator;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (ended) return -1;
+            int result = super.read();
+            if (result == -1) checkFollowingParts();
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (ended) return -1;
+            int result = super.read(b, off, len);
+            if (result == -1) checkFollowingParts();
+            return result;
+        }
+
+        private void checkFollowingParts() throws IOException {
+            ended = true;
+            try {
+                while (itemIterator.hasNext()) {
+                    FileItemStream item = itemIterator.next();
+                    if (!HASH_PART.equals(item.getFieldName())) continue;
+                    try (InputStream inputStream = item.openStream()) {
+                        if (!readHash(inputStream).isBlank()) {
+                            throw new ValidationException("hash: must precede the file part");
+                        }
+                    }
+                }
+            } catch (FileUploadException e) {
+                throw new FileUploadBase.FileUploadIOException(e);
+            }
         }
     }
 
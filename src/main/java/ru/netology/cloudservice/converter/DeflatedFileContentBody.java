@@ -0,0 +1,98 @@
+package ru.netology.cloudservice.converter;
+
+import org.springframework.util.StreamUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.netology.cloudservice.model.dto.DeflatedContentDto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.Adler32;
+
+/**
+ * Multipart body in the {@code deflate} (zlib) coding. Stored deflate blocks of the content are sent as is,
+ * and the multipart envelope around them goes into uncompressed blocks, so nothing is compressed per request.
+ */
+class DeflatedFileContentBody implements StreamingResponseBody {
+    private static final byte[] ZLIB_HEADER = {0x78, 0x01};
+    private static final int STORED_BLOCK_HEADER_LENGTH = 5;
+    private static final int MAX_STORED_BLOCK_LENGTH = 0xFFFF;
+    private static final long ADLER32_BASE = 65521;
+
+    private final MultipartFileContentBody body;
+    private final DeflatedContentDto content;
+
+    DeflatedFileContentBody(MultipartFileContentBody body, DeflatedContentDto content) {
+        this.body = body;
+        this.content = content;
+    }
+
+    long contentLength() throws IOException {
+        return ZLIB_HEADER.length
+                + storedBlocksLength(body.getPreamble())
+                + content.getBlocks().contentLength()
+                + storedBlocksLength(body.getEpilogue())
+                + Integer.BYTES;
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        outputStream.write(ZLIB_HEADER);
+        writeStoredBlocks(outputStream, body.getPreamble(), false);
+        try (InputStream inputStream = content.getBlocks().getInputStream()) {
+            StreamUtils.copy(inputStream, outputStream);
+        }
+        writeStoredBlocks(outputStream, body.getEpilogue(), true);
+        outputStream.write(ByteBuffer.allocate(Integer.BYTES).putInt((int) adler32()).array());
+    }
+
+    private long adler32() {
+        long adler32 = combineAdler32(
+                adler32(body.getPreamble()), Integer.toUnsignedLong(content.getAdler32()), content.getLength());
+        return combineAdler32(adler32, adler32(body.getEpilogue()), body.getEpilogue().length);
+    }
+
+    private static long adler32(byte[] bytes) {
+        Adler32 adler32 = new Adler32();
+        adler32.update(bytes);
+        return adler32.getValue();
+    }
+
+    /**
+     * Adler-32 of two concatenated sequences, ported from zlib {@code adler32_combine}.
+     */
+    static long combineAdler32(long adler1, long adler2, long length2) {
+        long remainder = length2 % ADLER32_BASE;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = remainder * sum1 % ADLER32_BASE;
+        sum1 += (adler2 & 0xFFFF) + ADLER32_BASE - 1;
+        sum2 += (adler1 >>> 16) + (adler2 >>> 16) + ADLER32_BASE - remainder;
+        if (sum1 >= ADLER32_BASE) sum1 -= ADLER32_BASE;
+        if (sum1 >= ADLER32_BASE) sum1 -= ADLER32_BASE;
+        if (sum2 >= ADLER32_BASE << 1) sum2 -= ADLER32_BASE << 1;
+        if (sum2 >= ADLER32_BASE) sum2 -= ADLER32_BASE;
+        return sum1 | (sum2 << 16);
+    }
+
+    private static long storedBlocksLength(byte[] bytes) {
+        long blocks = Math.max(1, (bytes.length + MAX_STORED_BLOCK_LENGTH - 1) / MAX_STORED_BLOCK_LENGTH);
+        return blocks * STORED_BLOCK_HEADER_LENGTH + bytes.length;
+    }
+
+    private static void writeStoredBlocks(OutputStream outputStream, byte[] bytes, boolean last) throws IOException {
+        int offset = 0;
+        do {
+            int length = Math.min(bytes.length - offset, MAX_STORED_BLOCK_LENGTH);
+            boolean finalBlock = last && offset + length == bytes.length;
+            outputStream.write(finalBlock ? 1 : 0);
+            outputStream.write(length & 0xFF);
+            outputStream.write(length >>> 8);
+            outputStream.write(~length & 0xFF);
+            outputStream.write((~length >>> 8) & 0xFF);
+            outputStream.write(bytes, offset, length);
+            offset += length;
+        } while (offset < bytes.length);
+    }
+
+}
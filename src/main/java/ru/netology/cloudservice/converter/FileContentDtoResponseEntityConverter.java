@@ -1,37 +1,274 @@
 package ru.netology.cloudservice.converter;
 
 import lombok.NoArgsConstructor;
-import org.apache.http.HttpEntity;
-import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.netology.cloudservice.model.dto.DeflatedContentDto;
 import ru.netology.cloudservice.model.dto.FileContentDto;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
-import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.springframework.http.HttpHeaders.ACCEPT_ENCODING;
+import static org.springframework.http.HttpHeaders.ACCEPT_RANGES;
+import static org.springframework.http.HttpHeaders.CONTENT_ENCODING;
+import static org.springframework.http.HttpHeaders.CONTENT_RANGE;
+import static org.springframework.http.HttpHeaders.RANGE;
+import static org.springframework.http.HttpHeaders.VARY;
+import static org.springframework.http.HttpStatus.*;
 
 @Component
 @NoArgsConstructor
 public class FileContentDtoResponseEntityConverter {
+    private static final String BYTES_UNIT = "bytes";
+    private static final String CRLF = "\r\n";
+    private static final int MAX_RANGES = 16;
+    private static final String DEFLATE_ENCODING = "deflate";
+    private static final String QUALITY_PARAMETER = "q=";
+    private static final MediaType MULTIPART_BYTERANGES = MediaType.parseMediaType("multipart/byteranges");
 
-    public ResponseEntity<StreamingResponseBody> from(FileContentDto fileContentDto) {
-        return from(fileContentDto.getInputStream(), fileContentDto.getHash());
+    public ResponseEntity<StreamingResponseBody> from(FileContentDto fileContentDto) throws IOException {
+        return from(fileContentDto, HttpHeaders.EMPTY);
     }
 
-    public ResponseEntity<StreamingResponseBody> from(InputStream inputStream, String hash) {
-        HttpEntity httpEntity = buildHttpEntity(inputStream, hash);
+    public ResponseEntity<StreamingResponseBody> from(InputStream inputStream, String hash) throws IOException {
+        return from(new InputStreamResource(inputStream), hash, HttpHeaders.EMPTY);
+    }
+
+    public ResponseEntity<StreamingResponseBody> from(Resource resource, String hash) throws IOException {
+        return from(resource, hash, HttpHeaders.EMPTY);
+    }
+
+    public ResponseEntity<StreamingResponseBody> from(FileContentDto fileContentDto, HttpHeaders requestHeaders)
+            throws IOException {
+        DeflatedContentDto deflated = fileContentDto.getDeflated();
+        if (deflated == null) {
+            return from(fileContentDto.getResource(), fileContentDto.getHash(), requestHeaders);
+        }
+        // ranges of the encoded body are useless for resuming, they are served from the inflated content
+        if (requestHeaders.getFirst(RANGE) == null && acceptsDeflate(requestHeaders)) {
+            return deflated(deflated, fileContentDto.getResource(), fileContentDto.getHash(), requestHeaders);
+        }
+        ResponseEntity<StreamingResponseBody> response =
+                from(fileContentDto.getResource(), fileContentDto.getHash(), requestHeaders);
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .header(VARY, ACCEPT_ENCODING)
+                .body(response.getBody());
+    }
+
+    public ResponseEntity<StreamingResponseBody> from(Resource resource, String hash, HttpHeaders requestHeaders)
+            throws IOException {
+        String eTag = toETag(hash);
+        if (matchesAny(eTag, requestHeaders.getIfNoneMatch())) {
+            return ResponseEntity.status(NOT_MODIFIED).eTag(eTag).build();
+        }
+
+        MultipartFileContentBody body = new MultipartFileContentBody(resource, hash, generateBoundary(hash));
+        long contentLength = body.contentLength();
+        List<HttpRange> requestedRanges = contentLength < 0 || !matchesIfRange(eTag, requestHeaders)
+                ? Collections.emptyList()
+                : parseRanges(requestHeaders);
+        List<HttpRange> ranges = getSatisfiableRanges(requestedRanges, contentLength);
+
+        if (ranges.isEmpty() && !requestedRanges.isEmpty()) {
+            return ResponseEntity.status(REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(CONTENT_RANGE, BYTES_UNIT + " */" + contentLength)
+                    .build();
+        }
+        // many or overlapping ranges would make the response larger than the whole content
+        ranges = ranges.size() > MAX_RANGES || getTotalLength(ranges, contentLength) > contentLength
+                ? Collections.emptyList()
+                : coalesce(ranges, contentLength);
+
+        if (ranges.isEmpty()) {
+            ResponseEntity.BodyBuilder responseBuilder = ResponseEntity.ok()
+                    .contentType(body.getContentType())
+                    .eTag(eTag);
+            if (contentLength >= 0) {
+                responseBuilder.header(ACCEPT_RANGES, BYTES_UNIT).contentLength(contentLength);
+            }
+            return responseBuilder.body(body);
+        }
+
+        return ranges.size() == 1
+                ? singleRange(body, ranges.get(0), contentLength, eTag)
+                : multipleRanges(body, ranges, contentLength, eTag);
+    }
+
+    private static ResponseEntity<StreamingResponseBody> deflated(
+            DeflatedContentDto deflated, Resource resource, String hash, HttpHeaders requestHeaders)
+            throws IOException {
+        String eTag = toETag(hash + "-" + DEFLATE_ENCODING);
+        if (matchesAny(eTag, requestHeaders.getIfNoneMatch())) {
+            return ResponseEntity.status(NOT_MODIFIED).eTag(eTag).header(VARY, ACCEPT_ENCODING).build();
+        }
+
+        MultipartFileContentBody body = new MultipartFileContentBody(resource, hash, generateBoundary(hash));
+        DeflatedFileContentBody deflatedBody = new DeflatedFileContentBody(body, deflated);
         return ResponseEntity.ok()
-                .header(CONTENT_TYPE, httpEntity.getContentType().getValue())
-                .body(httpEntity::writeTo);
+                .contentType(body.getContentType())
+                .eTag(eTag)
+                .header(CONTENT_ENCODING, DEFLATE_ENCODING)
+                .header(VARY, ACCEPT_ENCODING)
+                .contentLength(deflatedBody.contentLength())
+                .body(deflatedBody);
+    }
+
+    private static ResponseEntity<StreamingResponseBody> singleRange(
+            MultipartFileContentBody body, HttpRange range, long contentLength, String eTag) {
+        long start = range.getRangeStart(contentLength);
+        long count = range.getRangeEnd(contentLength) - start + 1;
+        return ResponseEntity.status(PARTIAL_CONTENT)
+                .contentType(body.getContentType())
+                .eTag(eTag)
+                .header(ACCEPT_RANGES, BYTES_UNIT)
+                .header(CONTENT_RANGE, toContentRange(range, contentLength))
+                .contentLength(count)
+                .body(outputStream -> body.writeTo(outputStream, start, count));
+    }
+
+    private static ResponseEntity<StreamingResponseBody> multipleRanges(
+            MultipartFileContentBody body, List<HttpRange> ranges, long contentLength, String eTag) {
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long responseLength = 0;
+        for (HttpRange range : ranges) {
+            byte[] partHeader = (CRLF + "--" + boundary + CRLF
+                    + HttpHeaders.CONTENT_TYPE + ": " + body.getContentType() + CRLF
+                    + CONTENT_RANGE + ": " + toContentRange(range, contentLength) + CRLF
+                    + CRLF).getBytes(UTF_8);
+            partHeaders.add(partHeader);
+            responseLength += partHeader.length
+                    + range.getRangeEnd(contentLength) - range.getRangeStart(contentLength) + 1;
+        }
+        byte[] closing = (CRLF + "--" + boundary + "--" + CRLF).getBytes(UTF_8);
+        responseLength += closing.length;
+
+        return ResponseEntity.status(PARTIAL_CONTENT)
+                .contentType(new MediaType(MULTIPART_BYTERANGES, Map.of("boundary", boundary)))
+                .eTag(eTag)
+                .header(ACCEPT_RANGES, BYTES_UNIT)
+                .contentLength(responseLength)
+                .body(outputStream -> {
+                    for (int i = 0; i < ranges.size(); i++) {
+                        HttpRange range = ranges.get(i);
+                        long start = range.getRangeStart(contentLength);
+                        outputStream.write(partHeaders.get(i));
+                        body.writeTo(outputStream, start, range.getRangeEnd(contentLength) - start + 1);
+                    }
+                    outputStream.write(closing);
+                });
+    }
+
+    private static List<HttpRange> parseRanges(HttpHeaders requestHeaders) {
+        try {
+            return requestHeaders.getRange();
+        } catch (IllegalArgumentException ex) {
+            return Collections.emptyList();
+        }
+    }
+
+    private static boolean acceptsDeflate(HttpHeaders requestHeaders) {
+        for (String coding : requestHeaders.getValuesAsList(ACCEPT_ENCODING)) {
+            String[] parameters = coding.split(";");
+            if (parameters[0].trim().equalsIgnoreCase(DEFLATE_ENCODING)) {
+                return getQuality(parameters) > 0;
+            }
+        }
+        return false;
+    }
+
+    private static double getQuality(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (parameter.startsWith(QUALITY_PARAMETER)) {
+                try {
+                    return Double.parseDouble(parameter.substring(QUALITY_PARAMETER.length()));
+                } catch (NumberFormatException ex) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private static List<HttpRange> getSatisfiableRanges(List<HttpRange> ranges, long contentLength) {
+        List<HttpRange> satisfiableRanges = new ArrayList<>(ranges.size());
+        for (HttpRange range : ranges) {
+            try {
+                if (range.getRangeStart(contentLength) < contentLength) satisfiableRanges.add(range);
+            } catch (IllegalArgumentException ex) {
+                // an invalid range is skipped like an unsatisfiable one
+            }
+        }
+        return satisfiableRanges;
+    }
+
+    private static long getTotalLength(List<HttpRange> ranges, long contentLength) {
+        return ranges.stream()
+                .mapToLong(range -> range.getRangeEnd(contentLength) - range.getRangeStart(contentLength) + 1)
+                .sum();
+    }
+
+    /**
+     * Sorts the ranges and merges overlapping or adjacent ones.
+     */
+    private static List<HttpRange> coalesce(List<HttpRange> ranges, long contentLength) {
+        List<long[]> bounds = ranges.stream()
+                .map(range -> new long[]{range.getRangeStart(contentLength), range.getRangeEnd(contentLength)})
+                .sorted(Comparator.comparingLong(range -> range[0]))
+                .collect(Collectors.toList());
+        List<HttpRange> coalesced = new ArrayList<>(bounds.size());
+        long[] current = null;
+        for (long[] range : bounds) {
+            if (current != null && range[0] <= current[1] + 1) {
+                current[1] = Math.max(current[1], range[1]);
+                continue;
+            }
+            if (current != null) coalesced.add(HttpRange.createByteRange(current[0], current[1]));
+            current = range;
+        }
+        if (current != null) coalesced.add(HttpRange.createByteRange(current[0], current[1]));
+        return coalesced;
+    }
+
+    private static boolean matchesIfRange(String eTag, HttpHeaders requestHeaders) {
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        return ifRange == null || ifRange.equals(eTag);
+    }
+
+    private static boolean matchesAny(String eTag, List<String> requestETags) {
+        return requestETags.stream()
+                .map(requestETag -> requestETag.startsWith("W/") ? requestETag.substring(2) : requestETag)
+                .anyMatch(requestETag -> requestETag.equals("*") || requestETag.equals(eTag));
+    }
+
+    private static String toContentRange(HttpRange range, long contentLength) {
+        return String.format("%s %d-%d/%d", BYTES_UNIT,
+                range.getRangeStart(contentLength), range.getRangeEnd(contentLength), contentLength);
+    }
+
+    private static String toETag(String hash) {
+        return "\"" + hash + "\"";
     }
 
-    private static HttpEntity buildHttpEntity(InputStream inputStream, String hash) {
-        MultipartEntityBuilder builder = MultipartEntityBuilder.create();
-        builder.addBinaryBody("file", inputStream);
-        builder.addTextBody("hash", hash);
-        return builder.build();
+    private static String generateBoundary(String seed) {
+        return UUID.nameUUIDFromBytes(seed.getBytes(UTF_8)).toString().replace("-", "");
     }
 
 }
@@ -0,0 +1,100 @@
+package ru.netology.cloudservice.converter;
+
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.springframework.http.MediaType.MULTIPART_FORM_DATA;
+
+class MultipartFileContentBody implements StreamingResponseBody {
+    private static final String CRLF = "\r\n";
+
+    private final Resource content;
+    private final String boundary;
+    private final byte[] preamble;
+    private final byte[] epilogue;
+
+    MultipartFileContentBody(Resource content, String hash, String boundary) {
+        this.content = content;
+        this.boundary = boundary;
+        this.preamble = ("--" + boundary + CRLF
+                + "Content-Disposition: form-data; name=\"file\"" + CRLF
+                + "Content-Type: application/octet-stream" + CRLF
+                + CRLF).getBytes(UTF_8);
+        this.epilogue = (CRLF + "--" + boundary + CRLF
+                + "Content-Disposition: form-data; name=\"hash\"" + CRLF
+                + "Content-Type: text/plain; charset=UTF-8" + CRLF
+                + CRLF + hash + CRLF
+                + "--" + boundary + "--" + CRLF).getBytes(UTF_8);
+    }
+
+    MediaType getContentType() {
+        return new MediaType(MULTIPART_FORM_DATA, Map.of("boundary", boundary));
+    }
+
+    byte[] getPreamble() {
+        return preamble;
+    }
+
+    byte[] getEpilogue() {
+        return epilogue;
+    }
+
+    /**
+     * Returns -1 for a content that can be read only once, as its length is not known without consuming it.
+     */
+    long contentLength() throws IOException {
+        if (content.isOpen()) return -1;
+        return preamble.length + content.contentLength() + epilogue.length;
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        outputStream.write(preamble);
+        writeContent(outputStream);
+        outputStream.write(epilogue);
+    }
+
+    void writeTo(OutputStream outputStream, long start, long count) throws IOException {
+        long end = start + count;
+        long contentOffset = preamble.length;
+        long epilogueOffset = contentOffset + content.contentLength();
+        writeBytes(outputStream, preamble, 0, start, end);
+        if (start < epilogueOffset && end > contentOffset) {
+            long contentStart = Math.max(start, contentOffset) - contentOffset;
+            long contentEnd = Math.min(end, epilogueOffset) - contentOffset;
+            writeContent(outputStream, contentStart, contentEnd);
+        }
+        writeBytes(outputStream, epilogue, epilogueOffset, start, end);
+    }
+
+    private void writeContent(OutputStream outputStream) throws IOException {
+        try (InputStream inputStream = content.getInputStream()) {
+            StreamUtils.copy(inputStream, outputStream);
+        }
+    }
+
+    /**
+     * The content before the range is skipped: a file seeks to it, a compressed content is inflated up to it.
+     */
+    private void writeContent(OutputStream outputStream, long start, long end) throws IOException {
+        try (InputStream inputStream = content.getInputStream()) {
+            StreamUtils.copyRange(inputStream, outputStream, start, end - 1);
+        }
+    }
+
+    private static void writeBytes(OutputStream outputStream, byte[] bytes, long offset, long start, long end)
+            throws IOException {
+        long from = Math.max(start, offset);
+        long to = Math.min(end, offset + bytes.length);
+        if (from < to) outputStream.write(bytes, (int) (from - offset), (int) (to - from));
+    }
+
+}
@@ -0,0 +1,28 @@
+package ru.netology.cloudservice.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.Instant;
+
+@Entity
+@Table(name = "reconcile_cursors")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReconcileCursor {
+
+    @Id
+    private String name;
+
+    private String lastKey;
+
+    private Instant updatedAt = Instant.now();
+
+}
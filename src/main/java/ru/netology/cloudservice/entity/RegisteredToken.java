@@ -4,6 +4,7 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import ru.netology.cloudservice.util.TokenDigest;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -18,11 +19,9 @@ import java.time.Instant;
 @NoArgsConstructor
 @AllArgsConstructor
 public class RegisteredToken {
-    private static final int DEFAULT_MAX_TOKEN_SIZE = 4096;
-
     @Id
-    @Column(nullable = false, unique = true, length = DEFAULT_MAX_TOKEN_SIZE)
-    private String token;
+    @Column(nullable = false, unique = true, length = TokenDigest.LENGTH)
+    private String tokenDigest;
 
     @Column(nullable = false)
     private String login;
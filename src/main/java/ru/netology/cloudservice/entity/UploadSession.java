@@ -0,0 +1,60 @@
+package ru.netology.cloudservice.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.*;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+@Entity
+@Table(name = "upload_sessions")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSession {
+
+    @Id
+    private String id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    private UserEntity owner;
+
+    private String filename;
+
+    private long filesize;
+
+    private long chunkSize;
+
+    private String hash;
+
+    private Instant createdAt = Instant.now();
+
+    @ElementCollection
+    @CollectionTable(name = "upload_session_chunks", joinColumns = @JoinColumn(name = "session_id"))
+    @Column(name = "chunk_index")
+    private Set<Integer> receivedChunks = new HashSet<>();
+
+    private boolean committing;
+
+    public int getChunksCount() {
+        return Math.toIntExact((filesize + chunkSize - 1) / chunkSize);
+    }
+
+    public long getChunkOffset(int chunk) {
+        return chunk * chunkSize;
+    }
+
+    public long getChunkLength(int chunk) {
+        return Math.min(chunkSize, filesize - getChunkOffset(chunk));
+    }
+
+    public boolean isComplete() {
+        return receivedChunks.size() == getChunksCount();
+    }
+
+}
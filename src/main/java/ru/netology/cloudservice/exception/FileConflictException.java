@@ -0,0 +1,12 @@
+package ru.netology.cloudservice.exception;
+
+/**
+ * Thrown when a concurrent request has taken the same live filename first.
+ */
+public class FileConflictException extends RuntimeException {
+
+    public FileConflictException(String fileName) {
+        super("Concurrent modification conflict: " + fileName);
+    }
+
+}
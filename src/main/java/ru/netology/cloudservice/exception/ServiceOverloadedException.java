@@ -0,0 +1,12 @@
+package ru.netology.cloudservice.exception;
+
+/**
+ * Thrown when a bounded resource is saturated and the request should be retried later.
+ */
+public class ServiceOverloadedException extends RuntimeException {
+
+    public ServiceOverloadedException(String message) {
+        super(message);
+    }
+
+}
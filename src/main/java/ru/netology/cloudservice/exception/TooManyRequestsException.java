@@ -0,0 +1,21 @@
+package ru.netology.cloudservice.exception;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a user exceeds a per-user limit; {@code retryAfter} tells when the request may succeed.
+ */
+public class TooManyRequestsException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public TooManyRequestsException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+}
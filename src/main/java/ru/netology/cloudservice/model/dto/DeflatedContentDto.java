@@ -0,0 +1,27 @@
+package ru.netology.cloudservice.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.core.io.Resource;
+
+@Getter
+@AllArgsConstructor
+public class DeflatedContentDto {
+
+    /**
+     * Raw deflate blocks without a final block, ending on a byte boundary,
+     * so they can be embedded into a larger deflate stream.
+     */
+    private final Resource blocks;
+
+    /**
+     * Length of the content after inflating.
+     */
+    private final long length;
+
+    /**
+     * Adler-32 checksum of the content after inflating.
+     */
+    private final int adler32;
+
+}
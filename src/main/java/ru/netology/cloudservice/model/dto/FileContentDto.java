@@ -2,14 +2,34 @@ package ru.netology.cloudservice.model.dto;
 
 import lombok.AllArgsConstructor;
 import lombok.Getter;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
 
+import java.io.IOException;
 import java.io.InputStream;
 
 @Getter
 @AllArgsConstructor
 public class FileContentDto {
 
-    private final InputStream inputStream;
+    private final Resource resource;
     private final String hash;
 
+    /**
+     * The same content as stored in compressed form, or {@code null} when it is stored as is.
+     */
+    private final DeflatedContentDto deflated;
+
+    public FileContentDto(Resource resource, String hash) {
+        this(resource, hash, null);
+    }
+
+    public FileContentDto(InputStream inputStream, String hash) {
+        this(new InputStreamResource(inputStream), hash);
+    }
+
+    public InputStream getInputStream() throws IOException {
+        return resource.getInputStream();
+    }
+
 }
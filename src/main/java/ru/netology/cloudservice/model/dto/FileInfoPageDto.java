@@ -0,0 +1,19 @@
+package ru.netology.cloudservice.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class FileInfoPageDto {
+
+    private final List<FileInfoDto> files;
+
+    /**
+     * Cursor of the next page, {@code null} on the last page.
+     */
+    private final String nextCursor;
+
+}
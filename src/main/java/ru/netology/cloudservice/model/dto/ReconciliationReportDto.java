@@ -0,0 +1,25 @@
+package ru.netology.cloudservice.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class ReconciliationReportDto {
+
+    /**
+     * Stored contents without a file or upload session referring to them.
+     */
+    private final long orphanContents;
+
+    /**
+     * Live files whose content is missing from the storage.
+     */
+    private final long danglingFiles;
+
+    /**
+     * Whether the drift found was fixed.
+     */
+    private final boolean fixed;
+
+}
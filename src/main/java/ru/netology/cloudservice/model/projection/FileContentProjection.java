@@ -0,0 +1,9 @@
+package ru.netology.cloudservice.model.projection;
+
+public interface FileContentProjection {
+    long getId();
+
+    String getContentUid();
+
+    long getFilesize();
+}
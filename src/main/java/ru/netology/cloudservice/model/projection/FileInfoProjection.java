@@ -0,0 +1,16 @@
+package ru.netology.cloudservice.model.projection;
+
+/**
+ * Read-only view of a file row for listings, selected without loading {@code FileInfo} entities.
+ */
+public interface FileInfoProjection {
+
+    long getId();
+
+    String getFilename();
+
+    long getFilesize();
+
+    String getHash();
+
+}
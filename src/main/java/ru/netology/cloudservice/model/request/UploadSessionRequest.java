@@ -0,0 +1,27 @@
+package ru.netology.cloudservice.model.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
+
+@Validated
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSessionRequest {
+
+    @PositiveOrZero
+    long size;
+
+    @Positive
+    long chunkSize;
+
+    String hash;
+
+}
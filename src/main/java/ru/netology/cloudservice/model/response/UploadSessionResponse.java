@@ -0,0 +1,17 @@
+package ru.netology.cloudservice.model.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Set;
+
+@Getter
+@AllArgsConstructor
+public class UploadSessionResponse {
+
+    private final String uploadId;
+    private final long chunkSize;
+    private final int chunksCount;
+    private final Set<Integer> receivedChunks;
+
+}
@@ -1,21 +1,74 @@
 package ru.netology.cloudservice.repository;
 
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.netology.cloudservice.entity.FileInfo;
+import ru.netology.cloudservice.model.projection.FileContentProjection;
+import ru.netology.cloudservice.model.projection.FileInfoProjection;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 
 @Repository
 public interface FileInfoRepository extends JpaRepository<FileInfo, Long> {
+    String LIVE_FILENAME_INDEX = "files_info_owner_id_live_filename_idx";
 
-    List<FileInfo> findAllByOwnerUsernameAndFilenameAndDeletedAtIsNull(String username, String filename);
+    /**
+     * Whether the violation is a second live file with the same owner and filename.
+     */
+    static boolean isLiveFilenameConflict(DataIntegrityViolationException ex) {
+        String constraintName = ex.getCause() instanceof ConstraintViolationException
+                ? ((ConstraintViolationException) ex.getCause()).getConstraintName()
+                : null;
+        return constraintName != null && constraintName.toLowerCase(Locale.ROOT).contains(LIVE_FILENAME_INDEX);
+    }
 
-    Optional<FileInfo> findFirstByOwnerUsernameAndFilenameAndDeletedAtIsNull(String username, String filename);
+    List<FileInfo> findAllByOwnerIdAndFilenameAndDeletedAtIsNull(long ownerId, String filename);
 
-    List<FileInfo> findAllByOwnerUsername(String username);
+    Optional<FileInfo> findFirstByOwnerIdAndFilenameAndDeletedAtIsNull(long ownerId, String filename);
 
-    List<FileInfo> findAllByOwnerUsernameAndDeletedAtIsNull(String username);
+    List<FileInfo> findAllByOwnerId(long ownerId);
+
+    List<FileInfo> findAllByOwnerIdAndDeletedAtIsNull(long ownerId);
+
+    Optional<FileInfoProjection> findProjectionByOwnerIdAndFilenameAndDeletedAtIsNull(long ownerId, String filename);
+
+    @Query("SELECT f.id AS id, f.filename AS filename, f.filesize AS filesize, f.hash AS hash "
+            + "FROM FileInfo f WHERE f.owner.id = :ownerId AND f.deletedAt IS NULL "
+            + "ORDER BY f.filename, f.id")
+    List<FileInfoProjection> findPage(long ownerId, Pageable pageable);
+
+    @Query("SELECT f.id AS id, f.filename AS filename, f.filesize AS filesize, f.hash AS hash "
+            + "FROM FileInfo f WHERE f.owner.id = :ownerId AND f.deletedAt IS NULL "
+            + "AND (f.filename > :filename OR (f.filename = :filename AND f.id > :id)) "
+            + "ORDER BY f.filename, f.id")
+    List<FileInfoProjection> findPageAfter(long ownerId, String filename, long id, Pageable pageable);
+
+    @Query("SELECT f.id AS id, f.contentUid AS contentUid, f.filesize AS filesize "
+            + "FROM FileInfo f WHERE f.deletedAt < :deletedBefore AND f.id > :afterId "
+            + "ORDER BY f.id")
+    List<FileContentProjection> findDeletedBefore(Instant deletedBefore, long afterId, Pageable pageable);
+
+    @Query("SELECT f.id AS id, f.contentUid AS contentUid, f.filesize AS filesize "
+            + "FROM FileInfo f WHERE f.deletedAt IS NULL AND f.id > :afterId "
+            + "ORDER BY f.id")
+    List<FileContentProjection> findLiveAfter(long afterId, Pageable pageable);
+
+    @Query("SELECT DISTINCT f.contentUid FROM FileInfo f WHERE f.contentUid IN :contentUids")
+    List<String> findExistingContentUids(Collection<String> contentUids);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE FileInfo f SET f.deletedAt = :deletedAt WHERE f.id IN :ids AND f.deletedAt IS NULL")
+    int markDeleted(Collection<Long> ids, Instant deletedAt);
 
 }
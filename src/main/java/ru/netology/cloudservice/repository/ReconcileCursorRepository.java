@@ -0,0 +1,9 @@
+package ru.netology.cloudservice.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import ru.netology.cloudservice.entity.ReconcileCursor;
+
+@Repository
+public interface ReconcileCursorRepository extends JpaRepository<ReconcileCursor, String> {
+}
@@ -1,12 +1,19 @@
 package ru.netology.cloudservice.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import ru.netology.cloudservice.entity.RegisteredToken;
 
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface RegisteredTokenRepository extends JpaRepository<RegisteredToken, String> {
-    Optional<RegisteredToken> findFirstByLoginAndToken(String login, String token);
+    Optional<RegisteredToken> findFirstByLoginAndTokenDigest(String login, String tokenDigest);
+
+    @Query("SELECT t.tokenDigest FROM RegisteredToken t WHERE t.expiresAt < :expiredBefore")
+    List<String> findExpiredTokens(Instant expiredBefore, Pageable pageable);
 }
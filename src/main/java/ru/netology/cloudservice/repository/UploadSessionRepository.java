@@ -0,0 +1,38 @@
+package ru.netology.cloudservice.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import ru.netology.cloudservice.entity.UploadSession;
+
+import javax.persistence.LockModeType;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+
+    @EntityGraph(attributePaths = "receivedChunks")
+    Optional<UploadSession> findByIdAndOwnerId(String id, long ownerId);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM UploadSession s WHERE s.id = :id AND s.owner.id = :ownerId")
+    Optional<UploadSession> findForUpdate(String id, long ownerId);
+
+    @Modifying
+    @Query("DELETE FROM UploadSession s WHERE s.id = :id AND s.owner.id = :ownerId")
+    int deleteByIdAndOwnerId(String id, long ownerId);
+
+    @Query("SELECT s.id FROM UploadSession s WHERE s.createdAt < :createdBefore ORDER BY s.createdAt")
+    List<String> findCreatedBefore(Instant createdBefore, Pageable pageable);
+
+    @Query("SELECT s.id FROM UploadSession s WHERE s.id IN :ids")
+    List<String> findExistingIds(Collection<String> ids);
+
+}
@@ -1,8 +1,10 @@
 package ru.netology.cloudservice.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.netology.cloudservice.entity.UserEntity;
 
 import java.util.Optional;
@@ -16,4 +18,9 @@ public interface UserRepository extends JpaRepository<UserEntity, Long> {
     @Query("select u.id from UserEntity u where username=:username")
     Optional<Long> findIdByUsername(String username);
 
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update UserEntity u set u.password=:password where u.username=:username")
+    int updatePassword(String username, String password);
+
 }
@@ -0,0 +1,26 @@
+package ru.netology.cloudservice.service;
+
+import ru.netology.cloudservice.model.request.UploadSessionRequest;
+import ru.netology.cloudservice.model.response.UploadSessionResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface ChunkedUploadService {
+    UploadSessionResponse createSession(String userName, String fileName, UploadSessionRequest request) throws IOException;
+
+    UploadSessionResponse findSession(String userName, String uploadId) throws IOException;
+
+    void writeChunk(String userName, String uploadId, int chunk, InputStream inputStream) throws IOException;
+
+    void commit(String userName, String uploadId) throws IOException;
+
+    void abort(String userName, String uploadId) throws IOException;
+
+    /**
+     * Deletes sessions abandoned for longer than the session ttl together with their contents.
+     *
+     * @return number of deleted sessions
+     */
+    long expireSessions();
+}
@@ -0,0 +1,13 @@
+package ru.netology.cloudservice.service;
+
+public interface DownloadLimiter {
+    /**
+     * Reserves a download slot for the user. The slot is held until the permit is closed.
+     */
+    Permit acquire(String userName);
+
+    interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,10 @@
+package ru.netology.cloudservice.service;
+
+public interface FileContentReclaimer {
+    /**
+     * Removes content of files deleted longer than the retention window together with their rows.
+     *
+     * @return number of reclaimed files
+     */
+    long reclaim();
+}
@@ -1,7 +1,13 @@
 package ru.netology.cloudservice.service;
 
+import org.springframework.core.io.Resource;
+import ru.netology.cloudservice.model.dto.DeflatedContentDto;
+
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface FileContentStorage {
 
@@ -9,8 +15,60 @@ public interface FileContentStorage {
 
     InputStream get(String uid) throws IOException;
 
+    Resource getResource(String uid) throws IOException;
+
+    /**
+     * Returns the content still compressed, if it is stored that way, so it can be sent without inflating.
+     */
+    default Optional<DeflatedContentDto> getDeflated(String uid) throws IOException {
+        return Optional.empty();
+    }
+
     long put(String uid, InputStream inputStream) throws IOException;
 
+    long write(String uid, long offset, InputStream inputStream) throws IOException;
+
+    /**
+     * Finishes a content assembled by {@link #write}, so it is stored the same way as one passed to {@link #put}.
+     * The content must not be written after that.
+     */
+    default void seal(String uid) throws IOException {
+    }
+
     void remove(String uid) throws IOException;
 
+    /**
+     * Lazily lists uids of stored contents. The stream holds an open directory and must be closed.
+     */
+    Stream<String> list() throws IOException;
+
+    /**
+     * Lists uids in a stable order, starting after the given uid or from the beginning if it is {@code null},
+     * so a long walk can be resumed from the last uid it reached.
+     *
+     * @throws UnsupportedOperationException if the layout has no order that can be walked without sorting
+     *                                       every uid in memory
+     */
+    Stream<String> listAfter(String afterUid) throws IOException;
+
+    Instant getLastModified(String uid) throws IOException;
+
+    /**
+     * Frees space held by content that no uid refers to anymore.
+     *
+     * @return number of reclaimed bytes
+     */
+    default long purgeUnreferenced() throws IOException {
+        return 0;
+    }
+
+    /**
+     * Moves contents stored in an outdated layout into the current one while the storage stays in use.
+     *
+     * @return number of moved contents
+     */
+    default long migrateLayout() throws IOException {
+        return 0;
+    }
+
 }
@@ -0,0 +1,14 @@
+package ru.netology.cloudservice.service;
+
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Optional;
+
+public interface PasswordVerifier {
+    boolean matches(UserDetails userDetails, String rawPassword);
+
+    /**
+     * Re-encodes an already verified password when its stored hash is outdated.
+     */
+    Optional<String> upgradeEncoding(UserDetails userDetails, String rawPassword);
+}
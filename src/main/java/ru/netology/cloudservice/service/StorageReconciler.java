@@ -0,0 +1,11 @@
+package ru.netology.cloudservice.service;
+
+import ru.netology.cloudservice.model.dto.ReconciliationReportDto;
+
+public interface StorageReconciler {
+    /**
+     * Compares stored contents with files and upload sessions and reports the drift.
+     * When fixing is enabled, orphan contents are removed and dangling files are marked deleted.
+     */
+    ReconciliationReportDto reconcile();
+}
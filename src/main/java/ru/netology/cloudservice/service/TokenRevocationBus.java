@@ -0,0 +1,21 @@
+package ru.netology.cloudservice.service;
+
+/**
+ * Delivers token revocations to every node of the service, so that each node
+ * can evict the revoked token from its local caches. Tokens are identified by {@link
+ * ru.netology.cloudservice.util.TokenDigest}, so token values never leave the node.
+ */
+public interface TokenRevocationBus {
+    void publish(String tokenDigest);
+
+    void subscribe(Listener listener);
+
+    interface Listener {
+        void onRevoked(String tokenDigest);
+
+        /**
+         * Called when revocations could have been missed, e.g. after a lost connection.
+         */
+        void onReset();
+    }
+}
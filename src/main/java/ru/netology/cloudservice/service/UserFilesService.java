@@ -2,14 +2,19 @@ package ru.netology.cloudservice.service;
 
 import ru.netology.cloudservice.model.dto.FileContentDto;
 import ru.netology.cloudservice.model.dto.FileInfoDto;
+import ru.netology.cloudservice.model.dto.FileInfoPageDto;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.List;
 import java.util.Optional;
 
 public interface UserFilesService {
-    List<FileInfoDto> findFilesList(String userName, int limit);
+    /**
+     * Returns files sorted by name, starting after the position of the given cursor.
+     *
+     * @param cursor {@link FileInfoPageDto#getNextCursor()} of the previous page, or {@code null} for the first page
+     */
+    FileInfoPageDto findFilesPage(String userName, int limit, String cursor);
 
     Optional<FileInfoDto> findFileInfo(String userName, String fileName);
 
@@ -20,4 +25,6 @@ public interface UserFilesService {
     FileContentDto openFile(String userName, String fileName) throws IOException;
 
     void saveFile(String userName, String fileName, String hash, InputStream inputStream) throws IOException;
+
+    void registerFile(String userName, String fileName, String hash, String contentUid, long fileSize);
 }
@@ -0,0 +1,9 @@
+package ru.netology.cloudservice.service;
+
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+public interface UserIdResolver {
+    long resolve(String userName) throws UsernameNotFoundException;
+
+    void evict(String userName);
+}
@@ -0,0 +1,19 @@
+package ru.netology.cloudservice.service;
+
+import ru.netology.cloudservice.exception.TooManyRequestsException;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.Principal;
+
+public interface UserRateLimiter {
+    /**
+     * Counts a request against the user's rate and rejects it when the user is out of
+     * request tokens or still owes transferred bytes.
+     */
+    void acquireRequest(Principal principal) throws TooManyRequestsException;
+
+    InputStream limit(Principal principal, InputStream inputStream);
+
+    OutputStream limit(Principal principal, OutputStream outputStream);
+}
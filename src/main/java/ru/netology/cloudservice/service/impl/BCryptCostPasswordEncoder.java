@@ -0,0 +1,54 @@
+package ru.netology.cloudservice.service.impl;
+
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BCrypt encoder that treats hashes with any cost other than its own as outdated, so lowering the cost
+ * makes logins cheaper for existing users too. All nodes sharing a database must use the same cost,
+ * otherwise they rehash the same passwords back and forth.
+ */
+public class BCryptCostPasswordEncoder extends BCryptPasswordEncoder {
+    public static final int MIN_STRENGTH = 4;
+    public static final int MAX_STRENGTH = 31;
+    private static final int CALIBRATION_STRENGTH = 8;
+    private static final String CALIBRATION_PASSWORD = "calibration";
+    private static final Pattern BCRYPT_COST_PATTERN = Pattern.compile("^\\$2[abxy]?\\$(\\d\\d)\\$");
+
+    private final int strength;
+
+    public BCryptCostPasswordEncoder(int strength) {
+        super(strength);
+        this.strength = strength;
+    }
+
+    public int getStrength() {
+        return strength;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null) return false;
+        Matcher matcher = BCRYPT_COST_PATTERN.matcher(encodedPassword);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) != strength;
+    }
+
+    /**
+     * Finds the highest cost whose hashing time on this host fits into the target duration.
+     * Each cost step doubles the work, so a single measurement is extrapolated.
+     */
+    public static int calibrateStrength(Duration target, int minStrength) {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(CALIBRATION_STRENGTH);
+        encoder.encode(CALIBRATION_PASSWORD);
+        long started = System.nanoTime();
+        encoder.encode(CALIBRATION_PASSWORD);
+        long elapsedNanos = Math.max(1, System.nanoTime() - started);
+
+        double steps = Math.log((double) target.toNanos() / elapsedNanos) / Math.log(2);
+        int strength = CALIBRATION_STRENGTH + (int) Math.floor(steps);
+        return Math.min(MAX_STRENGTH, Math.max(Math.max(MIN_STRENGTH, minStrength), strength));
+    }
+}
@@ -0,0 +1,242 @@
+package ru.netology.cloudservice.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionOperations;
+import ru.netology.cloudservice.entity.UploadSession;
+import ru.netology.cloudservice.model.request.UploadSessionRequest;
+import ru.netology.cloudservice.model.response.UploadSessionResponse;
+import ru.netology.cloudservice.repository.UploadSessionRepository;
+import ru.netology.cloudservice.repository.UserRepository;
+import ru.netology.cloudservice.service.ChunkedUploadService;
+import ru.netology.cloudservice.service.FileContentStorage;
+import ru.netology.cloudservice.service.UserFilesService;
+import ru.netology.cloudservice.service.UserIdResolver;
+
+import javax.validation.ValidationException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+import static ru.netology.cloudservice.util.TransactionCallbacks.afterCommit;
+
+/**
+ * Contents are streamed outside of transactions, so a slow client does not hold a DB connection;
+ * only the bookkeeping around each step runs in a short transaction.
+ * <p>
+ * Commit first marks the session as committing under the row lock, so no chunk is accepted after that,
+ * then seals the content and checks it. A chunk that is already received is acknowledged without being
+ * written again, so a retried PUT cannot change the content under a commit.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ChunkedUploadServiceJpaImpl implements ChunkedUploadService {
+    static final int MAX_CHUNKS_COUNT = 10_000;
+    private static final int EXPIRE_BATCH_SIZE = 500;
+
+    private final UserRepository userRepository;
+    private final UserIdResolver userIdResolver;
+    private final UploadSessionRepository uploadSessionRepository;
+    private final UserFilesService userFilesService;
+    private final FileContentStorage fileContentStorage;
+    private final TransactionOperations transactionOperations;
+    private final long maxChunkSize;
+    private final long maxSize;
+    private final Duration sessionTtl;
+
+    @Override
+    @Transactional
+    public UploadSessionResponse createSession(String userName, String fileName, UploadSessionRequest request)
+            throws IOException {
+        if (request.getChunkSize() > maxChunkSize) {
+            throw new ValidationException("chunkSize: must be less than or equal to " + maxChunkSize);
+        }
+        if (request.getSize() > maxSize) {
+            throw new ValidationException("size: must be less than or equal to " + maxSize);
+        }
+        if ((request.getSize() + request.getChunkSize() - 1) / request.getChunkSize() > MAX_CHUNKS_COUNT) {
+            throw new ValidationException("chunkSize: must split the file into at most " + MAX_CHUNKS_COUNT + " chunks");
+        }
+        long ownerId = userIdResolver.resolve(userName);
+
+        UploadSession uploadSession = new UploadSession();
+        uploadSession.setId(UUID.randomUUID().toString());
+        uploadSession.setOwner(userRepository.getReferenceById(ownerId));
+        uploadSession.setFilename(fileName);
+        uploadSession.setFilesize(request.getSize());
+        uploadSession.setChunkSize(request.getChunkSize());
+        uploadSession.setHash(request.getHash());
+
+        fileContentStorage.write(uploadSession.getId(), 0, InputStream.nullInputStream());
+        return toResponse(uploadSessionRepository.save(uploadSession));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public UploadSessionResponse findSession(String userName, String uploadId) throws IOException {
+        return toResponse(findSessionOrElseThrow(userName, uploadId));
+    }
+
+    @Override
+    public void writeChunk(String userName, String uploadId, int chunk, InputStream inputStream) throws IOException {
+        long ownerId = userIdResolver.resolve(userName);
+        UploadSession uploadSession = findSessionOrElseThrow(ownerId, uploadId);
+        if (chunk < 0 || chunk >= uploadSession.getChunksCount()) {
+            throw new ValidationException("chunk: must be between 0 and " + (uploadSession.getChunksCount() - 1));
+        }
+        checkOpen(uploadSession);
+        if (uploadSession.getReceivedChunks().contains(chunk)) return;
+        long expectedLength = uploadSession.getChunkLength(chunk);
+        long writtenLength = fileContentStorage.write(
+                uploadId, uploadSession.getChunkOffset(chunk), new LimitedInputStream(inputStream, expectedLength));
+        if (writtenLength != expectedLength || inputStream.read() != -1) {
+            throw new ValidationException("chunk: length must be " + expectedLength);
+        }
+
+        // the session row lock makes a repeated PUT of the same chunk see the first one
+        Boolean marked = transactionOperations.execute(status ->
+                uploadSessionRepository.findForUpdate(uploadId, ownerId)
+                        .map(lockedSession -> {
+                            checkOpen(lockedSession);
+                            lockedSession.getReceivedChunks().add(chunk);
+                            return true;
+                        })
+                        .orElse(false));
+        if (!Boolean.TRUE.equals(marked)) throw new FileNotFoundException(uploadId);
+    }
+
+    @Override
+    public void commit(String userName, String uploadId) throws IOException {
+        long ownerId = userIdResolver.resolve(userName);
+        UploadSession uploadSession = transactionOperations.execute(status ->
+                uploadSessionRepository.findForUpdate(uploadId, ownerId)
+                        .map(ChunkedUploadServiceJpaImpl::startCommit)
+                        .orElse(null));
+        if (uploadSession == null) throw new FileNotFoundException(uploadId);
+
+        try {
+            fileContentStorage.seal(uploadId);
+
+            String hash = uploadSession.getHash();
+            if (hash == null || hash.isBlank()) {
+                try (CheckedInputStream checkedInputStream =
+                             new CheckedInputStream(fileContentStorage.get(uploadId), new CRC32())) {
+                    checkedInputStream.transferTo(OutputStream.nullOutputStream());
+                    hash = Long.toHexString(checkedInputStream.getChecksum().getValue());
+                }
+            }
+
+            String fileHash = hash;
+            Boolean registered = transactionOperations.execute(status -> {
+                // a concurrent abort or expiry has already taken the session
+                if (uploadSessionRepository.deleteByIdAndOwnerId(uploadId, ownerId) == 0) return false;
+                userFilesService.registerFile(
+                        userName, uploadSession.getFilename(), fileHash, uploadId, uploadSession.getFilesize());
+                return true;
+            });
+            if (!Boolean.TRUE.equals(registered)) throw new FileNotFoundException(uploadId);
+        } catch (IOException | RuntimeException e) {
+            reopen(uploadId, ownerId);
+            throw e;
+        }
+    }
+
+    @Override
+    @Transactional
+    public void abort(String userName, String uploadId) throws IOException {
+        // the delete count tells whether this call owns the session or a concurrent commit does
+        if (uploadSessionRepository.deleteByIdAndOwnerId(uploadId, userIdResolver.resolve(userName)) == 0) {
+            throw new FileNotFoundException(uploadId);
+        }
+        afterCommit(() -> removeContent(uploadId));
+    }
+
+    @Override
+    @Scheduled(
+            initialDelayString = "${application.userfiles.upload.expire-interval:PT1H}",
+            fixedDelayString = "${application.userfiles.upload.expire-interval:PT1H}"
+    )
+    public long expireSessions() {
+        Instant createdBefore = Instant.now().minus(sessionTtl);
+        long expired = 0;
+        List<String> expiredSessions;
+        do {
+            expiredSessions = uploadSessionRepository.findCreatedBefore(
+                    createdBefore, PageRequest.of(0, EXPIRE_BATCH_SIZE));
+            if (expiredSessions.isEmpty()) break;
+            // rows go first, so a content is never removed under a session that can still be committed
+            uploadSessionRepository.deleteAllByIdInBatch(expiredSessions);
+            expiredSessions.forEach(this::removeContent);
+            expired += expiredSessions.size();
+        } while (expiredSessions.size() == EXPIRE_BATCH_SIZE);
+        if (expired > 0) log.info("Expired {} upload sessions", expired);
+        return expired;
+    }
+
+    private static UploadSession startCommit(UploadSession uploadSession) {
+        checkOpen(uploadSession);
+        if (!uploadSession.isComplete()) {
+            throw new ValidationException("upload: not all chunks are received");
+        }
+        uploadSession.setCommitting(true);
+        return uploadSession;
+    }
+
+    private static void checkOpen(UploadSession uploadSession) {
+        if (uploadSession.isCommitting()) {
+            throw new ValidationException("upload: is being committed");
+        }
+    }
+
+    /**
+     * Lets the client retry a commit that failed before the file was registered.
+     */
+    private void reopen(String uploadId, long ownerId) {
+        try {
+            transactionOperations.executeWithoutResult(status -> uploadSessionRepository
+                    .findForUpdate(uploadId, ownerId)
+                    .ifPresent(uploadSession -> uploadSession.setCommitting(false)));
+        } catch (RuntimeException e) {
+            log.warn("Upload session {} is left committing until it expires", uploadId, e);
+        }
+    }
+
+    private void removeContent(String uploadId) {
+        try {
+            if (fileContentStorage.contains(uploadId)) fileContentStorage.remove(uploadId);
+        } catch (IOException e) {
+            log.warn("Content of upload session {} is not removed", uploadId, e);
+        }
+    }
+
+    private UploadSession findSessionOrElseThrow(String userName, String uploadId) throws FileNotFoundException {
+        return findSessionOrElseThrow(userIdResolver.resolve(userName), uploadId);
+    }
+
+    private UploadSession findSessionOrElseThrow(long ownerId, String uploadId) throws FileNotFoundException {
+        return uploadSessionRepository.findByIdAndOwnerId(uploadId, ownerId)
+                .orElseThrow(() -> new FileNotFoundException(uploadId));
+    }
+
+    private static UploadSessionResponse toResponse(UploadSession uploadSession) {
+        Set<Integer> receivedChunks = new TreeSet<>(uploadSession.getReceivedChunks());
+        return new UploadSessionResponse(
+                uploadSession.getId(),
+                uploadSession.getChunkSize(),
+                uploadSession.getChunksCount(),
+                receivedChunks
+        );
+    }
+}
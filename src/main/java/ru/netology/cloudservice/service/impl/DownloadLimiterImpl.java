@@ -0,0 +1,74 @@
+package ru.netology.cloudservice.service.impl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.netology.cloudservice.exception.ServiceOverloadedException;
+import ru.netology.cloudservice.exception.TooManyRequestsException;
+import ru.netology.cloudservice.service.DownloadLimiter;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caps concurrent downloads globally and per user. Limits are checked before the response
+ * is started, so a saturated node answers immediately instead of queueing streams.
+ */
+@Service
+public class DownloadLimiterImpl implements DownloadLimiter {
+    private static final Duration RETRY_AFTER = Duration.ofSeconds(1);
+
+    private final int maxConcurrentPerUser;
+    private final Semaphore globalPermits;
+    private final Map<String, Integer> userDownloads = new ConcurrentHashMap<>();
+
+    public DownloadLimiterImpl(
+            MeterRegistry meterRegistry,
+            @Value("${application.userfiles.download.max-concurrent:64}") int maxConcurrent,
+            @Value("${application.userfiles.download.max-concurrent-per-user:4}") int maxConcurrentPerUser
+    ) {
+        this.maxConcurrentPerUser = maxConcurrentPerUser;
+        this.globalPermits = new Semaphore(maxConcurrent);
+        meterRegistry.gauge("downloads.active", globalPermits, permits -> maxConcurrent - permits.availablePermits());
+    }
+
+    @Override
+    public Permit acquire(String userName) {
+        if (!tryAcquireUser(userName)) {
+            throw new TooManyRequestsException("Too many concurrent downloads.", RETRY_AFTER);
+        }
+        if (!globalPermits.tryAcquire()) {
+            releaseUser(userName);
+            throw new ServiceOverloadedException("Too many concurrent downloads, try again later.");
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                globalPermits.release();
+                releaseUser(userName);
+            }
+        };
+    }
+
+    int getActiveDownloads(String userName) {
+        return userDownloads.getOrDefault(userName, 0);
+    }
+
+    private boolean tryAcquireUser(String userName) {
+        AtomicBoolean acquired = new AtomicBoolean();
+        userDownloads.compute(userName, (key, count) -> {
+            int current = count == null ? 0 : count;
+            if (current >= maxConcurrentPerUser) return count;
+            acquired.set(true);
+            return current + 1;
+        });
+        return acquired.get();
+    }
+
+    private void releaseUser(String userName) {
+        userDownloads.computeIfPresent(userName, (key, count) -> count > 1 ? count - 1 : null);
+    }
+}
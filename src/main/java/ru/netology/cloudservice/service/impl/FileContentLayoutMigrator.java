@@ -0,0 +1,46 @@
+package ru.netology.cloudservice.service.impl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.netology.cloudservice.service.FileContentStorage;
+
+import java.io.IOException;
+
+/**
+ * Moves stored contents into the configured storage layout in the background once the application is up.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(value = "application.userfiles.layout-migration.enabled", havingValue = "true",
+        matchIfMissing = true)
+public class FileContentLayoutMigrator {
+
+    private final FileContentStorage fileContentStorage;
+    private final MeterRegistry meterRegistry;
+
+    public FileContentLayoutMigrator(FileContentStorage fileContentStorage, MeterRegistry meterRegistry) {
+        this.fileContentStorage = fileContentStorage;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Thread migrationThread = new Thread(this::migrate, "file-layout-migration");
+        migrationThread.setDaemon(true);
+        migrationThread.start();
+    }
+
+    void migrate() {
+        try {
+            long migrated = fileContentStorage.migrateLayout();
+            meterRegistry.counter("storage.layout.migrated").increment(migrated);
+            if (migrated > 0) log.info("Moved {} stored contents into the current layout", migrated);
+        } catch (IOException e) {
+            log.warn("Storage layout migration failed: {}", e.getMessage());
+        }
+    }
+}
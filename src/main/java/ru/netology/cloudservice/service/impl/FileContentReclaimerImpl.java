@@ -0,0 +1,138 @@
+package ru.netology.cloudservice.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import ru.netology.cloudservice.model.projection.FileContentProjection;
+import ru.netology.cloudservice.repository.FileInfoRepository;
+import ru.netology.cloudservice.service.FileContentReclaimer;
+import ru.netology.cloudservice.service.FileContentStorage;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Reclaims storage of soft-deleted files. Rows are walked in id order, content of each batch
+ * is removed in parallel, and only rows whose content is gone are hard-deleted, so a failed
+ * removal is retried on the next run. A pause between batches keeps the load on disk and DB low.
+ */
+@Slf4j
+@Service
+public class FileContentReclaimerImpl implements FileContentReclaimer, DisposableBean {
+
+    private final FileInfoRepository fileInfoRepository;
+    private final FileContentStorage fileContentStorage;
+    private final Duration retention;
+    private final int batchSize;
+    private final Duration batchDelay;
+    private final ExecutorService removalExecutor;
+    private final Counter reclaimedFilesCounter;
+    private final Counter reclaimedBytesCounter;
+    private final Counter failedFilesCounter;
+    private final Timer reclaimTimer;
+
+    public FileContentReclaimerImpl(
+            FileInfoRepository fileInfoRepository,
+            FileContentStorage fileContentStorage,
+            MeterRegistry meterRegistry,
+            @Value("${application.userfiles.reclaim.retention:P7D}") Duration retention,
+            @Value("${application.userfiles.reclaim.batch-size:500}") int batchSize,
+            @Value("${application.userfiles.reclaim.batch-delay:PT0.1S}") Duration batchDelay,
+            @Value("${application.userfiles.reclaim.parallelism:4}") int parallelism
+    ) {
+        this.fileInfoRepository = fileInfoRepository;
+        this.fileContentStorage = fileContentStorage;
+        this.retention = retention;
+        this.batchSize = batchSize;
+        this.batchDelay = batchDelay;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("file-reclaim-");
+        threadFactory.setDaemon(true);
+        this.removalExecutor = Executors.newFixedThreadPool(parallelism, threadFactory);
+        this.reclaimedFilesCounter = meterRegistry.counter("files.reclaimed");
+        this.reclaimedBytesCounter = meterRegistry.counter("files.reclaimed.bytes");
+        this.failedFilesCounter = meterRegistry.counter("files.reclaim.failed");
+        this.reclaimTimer = meterRegistry.timer("files.reclaim.duration");
+    }
+
+    @Override
+    @Scheduled(
+            initialDelayString = "${application.userfiles.reclaim.interval:PT1H}",
+            fixedDelayString = "${application.userfiles.reclaim.interval:PT1H}"
+    )
+    public long reclaim() {
+        return reclaimTimer.record(() -> {
+            Instant deletedBefore = Instant.now().minus(retention);
+            long reclaimed = 0;
+            long afterId = 0;
+            List<FileContentProjection> deletedFiles;
+            do {
+                deletedFiles = fileInfoRepository.findDeletedBefore(
+                        deletedBefore, afterId, PageRequest.of(0, batchSize));
+                if (deletedFiles.isEmpty()) break;
+                afterId = deletedFiles.get(deletedFiles.size() - 1).getId();
+
+                List<Long> removedIds = removeContents(deletedFiles);
+                if (!removedIds.isEmpty()) {
+                    fileInfoRepository.deleteAllByIdInBatch(removedIds);
+                    reclaimedFilesCounter.increment(removedIds.size());
+                    reclaimed += removedIds.size();
+                }
+            } while (deletedFiles.size() == batchSize && pause());
+            return reclaimed;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        removalExecutor.shutdownNow();
+    }
+
+    private List<Long> removeContents(List<FileContentProjection> deletedFiles) {
+        List<CompletableFuture<Long>> removals = deletedFiles.stream()
+                .map(deletedFile -> CompletableFuture.supplyAsync(() -> removeContent(deletedFile), removalExecutor))
+                .collect(Collectors.toList());
+        return removals.stream()
+                .map(CompletableFuture::join)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private Long removeContent(FileContentProjection deletedFile) {
+        try {
+            if (deletedFile.getContentUid() != null) fileContentStorage.remove(deletedFile.getContentUid());
+            reclaimedBytesCounter.increment(deletedFile.getFilesize());
+        } catch (NoSuchFileException e) {
+            log.debug("Content of deleted file {} is already gone", deletedFile.getId());
+        } catch (IOException e) {
+            log.warn("Failed to remove content of deleted file {}: {}", deletedFile.getId(), e.getMessage());
+            failedFilesCounter.increment();
+            return null;
+        }
+        return deletedFile.getId();
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(batchDelay.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
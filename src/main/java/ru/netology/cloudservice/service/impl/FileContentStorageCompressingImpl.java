@@ -0,0 +1,328 @@
+package ru.netology.cloudservice.service.impl;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.core.io.Resource;
+import ru.netology.cloudservice.model.dto.DeflatedContentDto;
+import ru.netology.cloudservice.service.FileContentStorage;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compresses contents of another storage. The first block of every content is compressed on trial,
+ * and the whole content is deflated only if that block shrinks to {@code maxRatio} of its size,
+ * so media and archives are stored as is at the cost of one small block.
+ * <p>
+ * The codec is recorded in the stored uid: a deflated content is kept as {@code <uid>.deflate}
+ * holding raw deflate blocks closed by a sync flush, followed by the inflated length and Adler-32.
+ * Such blocks can be embedded into a {@code deflate} encoded response by {@link #getDeflated(String)}
+ * without inflating them. Contents written in place by {@link #write} are stored uncompressed.
+ */
+public class FileContentStorageCompressingImpl implements FileContentStorage {
+    static final String COMPRESSED_SUFFIX = ".deflate";
+    private static final int TRAILER_LENGTH = Long.BYTES + Integer.BYTES;
+    private static final byte[] FINAL_EMPTY_BLOCK = {0x03, 0x00};
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileContentStorage delegate;
+    private final int sampleSize;
+    private final double maxRatio;
+
+    public FileContentStorageCompressingImpl(FileContentStorage delegate, int sampleSize, double maxRatio) {
+        this.delegate = delegate;
+        this.sampleSize = sampleSize;
+        this.maxRatio = maxRatio;
+    }
+
+    @Override
+    public boolean contains(String uid) {
+        return delegate.contains(toCompressedUid(uid)) || delegate.contains(uid);
+    }
+
+    @Override
+    public InputStream get(String uid) throws IOException {
+        String compressedUid = toCompressedUid(uid);
+        if (!delegate.contains(compressedUid)) return delegate.get(uid);
+        return inflate(openBlocks(compressedUid, readTrailer(compressedUid)));
+    }
+
+    @Override
+    public Resource getResource(String uid) throws IOException {
+        String compressedUid = toCompressedUid(uid);
+        if (!delegate.contains(compressedUid)) return delegate.getResource(uid);
+        Trailer trailer = readTrailer(compressedUid);
+        return new StoredResource(uid, trailer.length, () -> inflate(openBlocks(compressedUid, trailer)));
+    }
+
+    @Override
+    public Optional<DeflatedContentDto> getDeflated(String uid) throws IOException {
+        String compressedUid = toCompressedUid(uid);
+        if (!delegate.contains(compressedUid)) return Optional.empty();
+        Trailer trailer = readTrailer(compressedUid);
+        return Optional.of(new DeflatedContentDto(
+                new StoredResource(compressedUid, trailer.blocksLength, () -> openBlocks(compressedUid, trailer)),
+                trailer.length,
+                trailer.adler32
+        ));
+    }
+
+    @Override
+    public long put(String uid, InputStream inputStream) throws IOException {
+        byte[] sample = inputStream.readNBytes(sampleSize);
+        InputStream content = new SequenceInputStream(new ByteArrayInputStream(sample), inputStream);
+        String compressedUid = toCompressedUid(uid);
+
+        if (!isWorthCompressing(sample)) {
+            long size = delegate.put(uid, content);
+            if (delegate.contains(compressedUid)) delegate.remove(compressedUid);
+            return size;
+        }
+
+        try (DeflatingInputStream deflatingInputStream = new DeflatingInputStream(content)) {
+            delegate.put(compressedUid, deflatingInputStream);
+            if (delegate.contains(uid)) delegate.remove(uid);
+            return deflatingInputStream.getLength();
+        }
+    }
+
+    @Override
+    public long write(String uid, long offset, InputStream inputStream) throws IOException {
+        if (delegate.contains(toCompressedUid(uid))) {
+            throw new IOException("Compressed content can not be written in place: " + uid);
+        }
+        return delegate.write(uid, offset, inputStream);
+    }
+
+    @Override
+    public void seal(String uid) throws IOException {
+        delegate.seal(uid);
+    }
+
+    @Override
+    public void remove(String uid) throws IOException {
+        String compressedUid = toCompressedUid(uid);
+        if (delegate.contains(compressedUid)) {
+            delegate.remove(compressedUid);
+            if (!delegate.contains(uid)) return;
+        }
+        delegate.remove(uid);
+    }
+
+    @Override
+    public Stream<String> list() throws IOException {
+        return delegate.list().map(FileContentStorageCompressingImpl::toUid);
+    }
+
+    @Override
+    public Stream<String> listAfter(String afterUid) throws IOException {
+        String storedUid = afterUid != null && delegate.contains(toCompressedUid(afterUid))
+                ? toCompressedUid(afterUid)
+                : afterUid;
+        return delegate.listAfter(storedUid).map(FileContentStorageCompressingImpl::toUid);
+    }
+
+    @Override
+    public Instant getLastModified(String uid) throws IOException {
+        String compressedUid = toCompressedUid(uid);
+        return delegate.contains(compressedUid)
+                ? delegate.getLastModified(compressedUid)
+                : delegate.getLastModified(uid);
+    }
+
+    @Override
+    public long purgeUnreferenced() throws IOException {
+        return delegate.purgeUnreferenced();
+    }
+
+    @Override
+    public long migrateLayout() throws IOException {
+        return delegate.migrateLayout();
+    }
+
+    private boolean isWorthCompressing(byte[] sample) {
+        if (sample.length == 0) return false;
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(sample);
+            deflater.finish();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long compressedLength = 0;
+            while (!deflater.finished()) {
+                compressedLength += deflater.deflate(buffer);
+            }
+            return compressedLength <= sample.length * maxRatio;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private Trailer readTrailer(String compressedUid) throws IOException {
+        long storedLength = delegate.getResource(compressedUid).contentLength();
+        if (storedLength < TRAILER_LENGTH) throw new IOException("Corrupted compressed content: " + compressedUid);
+        try (InputStream inputStream = delegate.get(compressedUid)) {
+            skipFully(inputStream, storedLength - TRAILER_LENGTH);
+            byte[] trailer = inputStream.readNBytes(TRAILER_LENGTH);
+            if (trailer.length < TRAILER_LENGTH) throw new EOFException(compressedUid);
+            ByteBuffer buffer = ByteBuffer.wrap(trailer);
+            return new Trailer(storedLength - TRAILER_LENGTH, buffer.getLong(), buffer.getInt());
+        }
+    }
+
+    private InputStream openBlocks(String compressedUid, Trailer trailer) throws IOException {
+        return new LimitedInputStream(delegate.get(compressedUid), trailer.blocksLength);
+    }
+
+    private static InputStream inflate(InputStream blocks) {
+        Inflater inflater = new Inflater(true);
+        InputStream terminated = new SequenceInputStream(blocks, new ByteArrayInputStream(FINAL_EMPTY_BLOCK));
+        return new InflaterInputStream(terminated, inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    private static void skipFully(InputStream inputStream, long count) throws IOException {
+        while (count > 0) {
+            long skipped = inputStream.skip(count);
+            if (skipped <= 0) {
+                if (inputStream.read() == -1) throw new EOFException();
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    private static String toCompressedUid(String uid) {
+        return uid + COMPRESSED_SUFFIX;
+    }
+
+    private static String toUid(String storedUid) {
+        return storedUid.endsWith(COMPRESSED_SUFFIX)
+                ? storedUid.substring(0, storedUid.length() - COMPRESSED_SUFFIX.length())
+                : storedUid;
+    }
+
+    private static class Trailer {
+        private final long blocksLength;
+        private final long length;
+        private final int adler32;
+
+        Trailer(long blocksLength, long length, int adler32) {
+            this.blocksLength = blocksLength;
+            this.length = length;
+            this.adler32 = adler32;
+        }
+    }
+
+    private static class StoredResource extends AbstractResource {
+        private final String uid;
+        private final long length;
+        private final InputStreamSource inputStreamSource;
+
+        StoredResource(String uid, long length, InputStreamSource inputStreamSource) {
+            this.uid = uid;
+            this.length = length;
+            this.inputStreamSource = inputStreamSource;
+        }
+
+        @Override
+        public String getDescription() {
+            return "Stored content [" + uid + "]";
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return inputStreamSource.getInputStream();
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public long contentLength() {
+            return length;
+        }
+    }
+
+    /**
+     * Deflates the stream into blocks closed by a sync flush instead of a final block,
+     * then appends the trailer.
+     */
+    private static class DeflatingInputStream extends InputStream {
+        private final InputStream inputStream;
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        private final Adler32 adler32 = new Adler32();
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private long length;
+        private boolean inputFinished;
+        private InputStream trailer;
+
+        DeflatingInputStream(InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        long getLength() {
+            return length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) return 0;
+            while (trailer == null) {
+                if (!inputFinished && deflater.needsInput()) {
+                    int read = inputStream.read(buffer);
+                    if (read == -1) {
+                        inputFinished = true;
+                    } else {
+                        adler32.update(buffer, 0, read);
+                        length += read;
+                        deflater.setInput(buffer, 0, read);
+                    }
+                    continue;
+                }
+                int deflated = deflater.deflate(b, off, len, inputFinished ? Deflater.SYNC_FLUSH : Deflater.NO_FLUSH);
+                if (inputFinished && deflated < len) {
+                    trailer = new ByteArrayInputStream(ByteBuffer.allocate(TRAILER_LENGTH)
+                            .putLong(length)
+                            .putInt((int) adler32.getValue())
+                            .array());
+                }
+                if (deflated > 0) return deflated;
+            }
+            return trailer.read(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            deflater.end();
+        }
+    }
+}
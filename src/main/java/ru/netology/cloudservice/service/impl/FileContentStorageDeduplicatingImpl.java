@@ -0,0 +1,244 @@
+package ru.netology.cloudservice.service.impl;
+
+import ru.netology.cloudservice.util.Hex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+
+/**
+ * Content-addressed storage. Every unique content is kept once as {@code .objects/<sha256>},
+ * and each uid is a hard link to its object, so the link count is the reference count.
+ * <p>
+ * Objects are sharded like the uids, by leading hex bytes of the digest ({@code .objects/ab/cd/<sha256>}).
+ * Objects left flat by an older layout keep their links and are moved into shards when linked
+ * again or by {@link #migrateLayout()}.
+ */
+public class FileContentStorageDeduplicatingImpl extends FileContentStorageFileSystemImpl {
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final String OBJECTS_DIR = ".objects";
+    private static final String LINK_COUNT_ATTRIBUTE = "unix:nlink";
+    private static final String CHANGE_TIME_ATTRIBUTE = "unix:ctime";
+    private static final int OBJECT_LINK_COUNT = 1;
+
+    private final Path objectsPath;
+
+    public FileContentStorageDeduplicatingImpl(Path rootPath) throws IOException {
+        this(rootPath, 0);
+    }
+
+    public FileContentStorageDeduplicatingImpl(Path rootPath, int shardLevels) throws IOException {
+        this(rootPath, shardLevels, FileSyncer.NONE);
+    }
+
+    public FileContentStorageDeduplicatingImpl(Path rootPath, int shardLevels, FileSyncer fileSyncer)
+            throws IOException {
+        super(rootPath, shardLevels, fileSyncer);
+        if (!Files.getFileStore(rootPath).supportsFileAttributeView("unix")) {
+            throw new IllegalStateException("Hard links are not supported by storage: " + rootPath);
+        }
+        objectsPath = rootPath.resolve(OBJECTS_DIR);
+        Files.createDirectories(objectsPath);
+    }
+
+    @Override
+    public long put(String uid, InputStream inputStream) throws IOException {
+        Path tempFile = Files.createTempFile(getTempPath(), uid, null);
+        try {
+            MessageDigest messageDigest = createMessageDigest();
+            long size = copyDurably(new DigestInputStream(inputStream, messageDigest), tempFile);
+            Path objectPath = resolveObject(Hex.toHex(messageDigest.digest()));
+            Path target = resolveForWrite(uid);
+            link(target, objectPath, tempFile);
+            getFileSyncer().syncDirectory(objectPath.getParent());
+            getFileSyncer().syncDirectory(target.getParent());
+            return size;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Refuses a uid that is already linked to an object, as writing it in place would change every content
+     * sharing that object. A file opened before it was sealed is no longer linked under the uid, so writes
+     * to it do not reach the object.
+     */
+    @Override
+    protected void checkWritable(String uid, Path path) throws IOException {
+        if (getLinkCount(path) > 1) {
+            throw new IOException("Sealed content can not be written in place: " + uid);
+        }
+    }
+
+    /**
+     * Stores a copy of the assembled content like {@link #put} does, so the shared object never is the inode
+     * a late writer of the upload may still hold open.
+     */
+    @Override
+    public void seal(String uid) throws IOException {
+        try (InputStream inputStream = get(uid)) {
+            put(uid, inputStream);
+        }
+    }
+
+    private synchronized void link(Path target, Path objectPath, Path content) throws IOException {
+        if (!Files.exists(objectPath)) {
+            Files.createDirectories(objectPath.getParent());
+            Path flatObjectPath = objectsPath.resolve(objectPath.getFileName());
+            if (Files.isRegularFile(flatObjectPath)) {
+                Files.move(flatObjectPath, objectPath, ATOMIC_MOVE);
+            } else {
+                Files.createLink(objectPath, content);
+            }
+        }
+        Files.deleteIfExists(target);
+        Files.createLink(target, objectPath);
+    }
+
+    /**
+     * Removes the uid together with its object once no other uid refers to it, so space is freed
+     * without scanning the objects. The content is hashed to find the object only for the last
+     * reference, and outside the lock.
+     */
+    @Override
+    public void remove(String uid) throws IOException {
+        if (removeIfNotLastReference(uid)) return;
+        removeLastReference(uid, digest(resolve(uid)));
+    }
+
+    private synchronized boolean removeIfNotLastReference(String uid) throws IOException {
+        Path target = resolve(uid);
+        if (getLinkCount(target) == OBJECT_LINK_COUNT + 1) return false;
+        Files.delete(target);
+        return true;
+    }
+
+    private synchronized void removeLastReference(String uid, String digest) throws IOException {
+        Path target = resolve(uid);
+        Object fileKey = getFileKey(target);
+        Files.delete(target);
+        for (Path objectPath : List.of(resolveObject(digest), objectsPath.resolve(digest))) {
+            if (Files.isRegularFile(objectPath) && fileKey.equals(getFileKey(objectPath))) {
+                purgeIfUnreferenced(objectPath);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the inode change time, which creating a link updates. The modification time belongs to the shared
+     * object, so a uid just linked to an old object would look old as well.
+     */
+    @Override
+    public Instant getLastModified(String uid) throws IOException {
+        return ((FileTime) Files.getAttribute(resolve(uid), CHANGE_TIME_ATTRIBUTE)).toInstant();
+    }
+
+    public int getReferenceCount(String uid) throws IOException {
+        return getLinkCount(resolve(uid)) - OBJECT_LINK_COUNT;
+    }
+
+    public long countObjects() throws IOException {
+        try (Stream<Path> objects = walkObjects()) {
+            return objects.count();
+        }
+    }
+
+    /**
+     * Sweeps objects left unreferenced by a crash between removing a uid and its object.
+     * Walks the objects without the lock, which is taken only to re-check and delete each unreferenced one.
+     */
+    @Override
+    public long purgeUnreferenced() throws IOException {
+        long reclaimedBytes = 0;
+        try (Stream<Path> objects = walkObjects()) {
+            Iterator<Path> iterator = objects.iterator();
+            while (iterator.hasNext()) {
+                reclaimedBytes += purgeIfUnreferenced(iterator.next());
+            }
+        }
+        return reclaimedBytes;
+    }
+
+    private synchronized long purgeIfUnreferenced(Path objectPath) throws IOException {
+        try {
+            if (getLinkCount(objectPath) > OBJECT_LINK_COUNT) return 0;
+            long size = Files.size(objectPath);
+            Files.delete(objectPath);
+            return size;
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public long migrateLayout() throws IOException {
+        long migrated = super.migrateLayout();
+        if (getShardLevels() == 0) return migrated;
+        try (DirectoryStream<Path> flatObjects = Files.newDirectoryStream(objectsPath, Files::isRegularFile)) {
+            for (Path flatObjectPath : flatObjects) {
+                if (migrateObject(flatObjectPath)) migrated++;
+            }
+        }
+        return migrated;
+    }
+
+    private synchronized boolean migrateObject(Path flatObjectPath) throws IOException {
+        Path objectPath = resolveObject(flatObjectPath.getFileName().toString());
+        if (Files.exists(objectPath) || !Files.exists(flatObjectPath)) return false;
+        Files.createDirectories(objectPath.getParent());
+        Files.move(flatObjectPath, objectPath, ATOMIC_MOVE);
+        return true;
+    }
+
+    private Path resolveObject(String digest) {
+        Path path = objectsPath;
+        for (int level = 0; level < getShardLevels(); level++) {
+            path = path.resolve(digest.substring(level * 2, level * 2 + 2));
+        }
+        return path.resolve(digest);
+    }
+
+    private Stream<Path> walkObjects() throws IOException {
+        return Files.walk(objectsPath).filter(Files::isRegularFile);
+    }
+
+    private static int getLinkCount(Path path) throws IOException {
+        return (int) Files.getAttribute(path, LINK_COUNT_ATTRIBUTE);
+    }
+
+    private static Object getFileKey(Path path) throws IOException {
+        return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+    }
+
+    private static String digest(Path path) throws IOException {
+        MessageDigest messageDigest = createMessageDigest();
+        try (InputStream inputStream = new DigestInputStream(Files.newInputStream(path), messageDigest)) {
+            inputStream.transferTo(OutputStream.nullOutputStream());
+        }
+        return Hex.toHex(messageDigest.digest());
+    }
+
+    private static MessageDigest createMessageDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,40 +1,340 @@
 package ru.netology.cloudservice.service.impl;
 
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import ru.netology.cloudservice.service.FileContentStorage;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 
+/**
+ * Keeps each content in its own file. With {@code shardLevels > 0} files are spread over
+ * nested directories named by hex bytes of the uid digest ({@code ab/cd/<uid>}), so no
+ * directory grows past a few thousand entries.
+ * <p>
+ * Files left in the flat layout stay readable and are moved into shards by {@link #migrateLayout()}
+ * while the storage is in use. A rename keeps the inode, so open streams are not affected.
+ * <p>
+ * New contents are written to {@code .tmp} on the same file system, flushed by the {@link FileSyncer}
+ * and renamed into place, so a uid never points to a partially written file. Temporary files
+ * left by a crash are removed on startup.
+ */
 public class FileContentStorageFileSystemImpl implements FileContentStorage {
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final String SHARD_DIGEST_ALGORITHM = "SHA-256";
+    private static final String HIDDEN_PREFIX = ".";
+    private static final String TEMP_DIR = ".tmp";
+    private static final Duration STALE_TEMP_FILE_AGE = Duration.ofDays(1);
 
     private final Path rootPath;
+    private final Path tempPath;
+    private final int shardLevels;
+    private final FileSyncer fileSyncer;
+    private volatile boolean flatFilesPresent;
 
     public FileContentStorageFileSystemImpl(Path rootPath) throws IOException {
+        this(rootPath, 0);
+    }
+
+    public FileContentStorageFileSystemImpl(Path rootPath, int shardLevels) throws IOException {
+        this(rootPath, shardLevels, FileSyncer.NONE);
+    }
+
+    public FileContentStorageFileSystemImpl(Path rootPath, int shardLevels, FileSyncer fileSyncer)
+            throws IOException {
         this.rootPath = rootPath;
-        if (!Files.exists(rootPath)) Files.createDirectories(rootPath);
+        this.tempPath = rootPath.resolve(TEMP_DIR);
+        this.shardLevels = shardLevels;
+        this.fileSyncer = fileSyncer;
+        Files.createDirectories(tempPath);
+        removeStaleTempFiles();
+        this.flatFilesPresent = shardLevels > 0 && hasFlatFiles();
+    }
+
+    protected Path getRootPath() {
+        return rootPath;
+    }
+
+    protected Path getTempPath() {
+        return tempPath;
+    }
+
+    protected int getShardLevels() {
+        return shardLevels;
+    }
+
+    protected FileSyncer getFileSyncer() {
+        return fileSyncer;
+    }
+
+    protected Path resolve(String uid) {
+        Path path = resolveSharded(uid);
+        if (flatFilesPresent && !Files.exists(path)) {
+            Path flatPath = rootPath.resolve(uid);
+            if (Files.exists(flatPath)) return flatPath;
+        }
+        return path;
+    }
+
+    /**
+     * Always returns the sharded path. A file still in the flat layout is moved there first,
+     * so a write never races with {@link #migrateLayout()} over two copies of one uid.
+     */
+    protected Path resolveForWrite(String uid) throws IOException {
+        Path path = resolveSharded(uid);
+        if (!Files.isDirectory(path.getParent())) Files.createDirectories(path.getParent());
+        if (flatFilesPresent && !Files.exists(path)) {
+            try {
+                Files.move(rootPath.resolve(uid), path, ATOMIC_MOVE);
+            } catch (NoSuchFileException e) {
+                // not stored flat or moved concurrently
+            }
+        }
+        return path;
     }
 
     @Override
     public boolean contains(String uid) {
-        return Files.exists(rootPath.resolve(uid));
+        return Files.exists(resolve(uid));
     }
 
     @Override
     public InputStream get(String uid) throws IOException {
-        return Files.newInputStream(rootPath.resolve(uid));
+        return Files.newInputStream(resolve(uid));
+    }
+
+    @Override
+    public Resource getResource(String uid) throws IOException {
+        Path path = resolve(uid);
+        if (!Files.isRegularFile(path)) throw new NoSuchFileException(uid);
+        return new FileSystemResource(path);
     }
 
     @Override
     public long put(String uid, InputStream inputStream) throws IOException {
-        return Files.copy(inputStream, rootPath.resolve(uid), REPLACE_EXISTING);
+        Path tempFile = Files.createTempFile(tempPath, uid, null);
+        try {
+            long size = copyDurably(inputStream, tempFile);
+            Path target = resolveForWrite(uid);
+            Files.move(tempFile, target, ATOMIC_MOVE, REPLACE_EXISTING);
+            fileSyncer.syncDirectory(target.getParent());
+            return size;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Writes the stream into the file and flushes it according to the {@link FileSyncer}.
+     */
+    protected long copyDurably(InputStream inputStream, Path file) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(file, WRITE, TRUNCATE_EXISTING)) {
+            long size = transfer(inputStream, fileChannel, 0);
+            fileSyncer.sync(fileChannel);
+            return size;
+        }
+    }
+
+    @Override
+    public long write(String uid, long offset, InputStream inputStream) throws IOException {
+        Path path = resolveForWrite(uid);
+        try (FileChannel fileChannel = FileChannel.open(path, CREATE, WRITE)) {
+            checkWritable(uid, path);
+            return transfer(inputStream, fileChannel, offset);
+        }
+    }
+
+    /**
+     * Called once the file is open for {@link #write}, before anything is written to it.
+     */
+    protected void checkWritable(String uid, Path path) throws IOException {
+    }
+
+    /**
+     * Flushes a content assembled by {@link #write} and its directory entry according to the {@link FileSyncer}.
+     * The uid is registered only after that, so a committed upload survives a crash as a renamed one does.
+     */
+    @Override
+    public void seal(String uid) throws IOException {
+        Path path = resolve(uid);
+        try (FileChannel fileChannel = FileChannel.open(path, WRITE)) {
+            fileSyncer.sync(fileChannel);
+        }
+        fileSyncer.syncDirectory(path.getParent());
     }
 
     @Override
     public void remove(String uid) throws IOException {
-        Files.delete(rootPath.resolve(uid));
+        Files.delete(resolve(uid));
+    }
+
+    @Override
+    public Stream<String> list() throws IOException {
+        return listFiles(Files.list(rootPath), shardLevels)
+                .map(path -> path.getFileName().toString());
+    }
+
+    /**
+     * Walks shard directories and the uids within each of them in name order, so the position of a uid
+     * follows from its shard path even after it is removed. Only one shard is sorted in memory at a time,
+     * so a flat layout, which would have to sort every uid, is not supported. Files still waiting in the flat
+     * layout of a sharded storage are skipped until they are migrated.
+     */
+    @Override
+    public Stream<String> listAfter(String afterUid) throws IOException {
+        if (shardLevels == 0) {
+            throw new UnsupportedOperationException("Ordered listing requires shard-levels > 0");
+        }
+        List<String> after = new ArrayList<>();
+        if (afterUid != null) rootPath.relativize(resolveSharded(afterUid)).forEach(name -> after.add(name.toString()));
+        try {
+            return listSorted(rootPath, shardLevels, after);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public Instant getLastModified(String uid) throws IOException {
+        return Files.getLastModifiedTime(resolve(uid)).toInstant();
+    }
+
+    @Override
+    public long migrateLayout() throws IOException {
+        if (shardLevels == 0) return 0;
+        long migrated = 0;
+        try (DirectoryStream<Path> flatFiles = Files.newDirectoryStream(rootPath, this::isFlatFile)) {
+            for (Path flatFile : flatFiles) {
+                Path shardedFile = resolveSharded(flatFile.getFileName().toString());
+                Files.createDirectories(shardedFile.getParent());
+                try {
+                    Files.move(flatFile, shardedFile, ATOMIC_MOVE);
+                    migrated++;
+                } catch (NoSuchFileException e) {
+                    // removed concurrently
+                }
+            }
+        }
+        flatFilesPresent = hasFlatFiles();
+        return migrated;
+    }
+
+    private Path resolveSharded(String uid) {
+        if (shardLevels == 0) return rootPath.resolve(uid);
+        byte[] digest = createMessageDigest().digest(uid.getBytes(UTF_8));
+        Path path = rootPath;
+        for (int level = 0; level < shardLevels; level++) {
+            path = path.resolve(String.format("%02x", digest[level]));
+        }
+        return path.resolve(uid);
+    }
+
+    private static Stream<Path> listFiles(Stream<Path> entries, int depth) {
+        return entries
+                .filter(path -> !path.getFileName().toString().startsWith(HIDDEN_PREFIX))
+                .flatMap(path -> {
+                    if (Files.isRegularFile(path)) return Stream.of(path);
+                    if (depth > 0 && Files.isDirectory(path)) return listFiles(listDirectory(path), depth - 1);
+                    return Stream.empty();
+                });
+    }
+
+    private static Stream<String> listSorted(Path directory, int depth, List<String> after) {
+        String bound = after.isEmpty() ? null : after.get(0);
+        return sortedNames(directory, depth > 0).stream()
+                .filter(name -> bound == null || name.compareTo(bound) >= 0)
+                .flatMap(name -> {
+                    boolean onBound = name.equals(bound);
+                    if (depth == 0) return onBound ? Stream.empty() : Stream.of(name);
+                    return listSorted(directory.resolve(name), depth - 1,
+                            onBound ? after.subList(1, after.size()) : List.of());
+                });
+    }
+
+    private static List<String> sortedNames(Path directory, boolean directories) {
+        try (Stream<Path> entries = Files.list(directory)) {
+            return entries
+                    .filter(path -> !path.getFileName().toString().startsWith(HIDDEN_PREFIX))
+                    .filter(path -> directories ? Files.isDirectory(path) : Files.isRegularFile(path))
+                    .map(path -> path.getFileName().toString())
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (NoSuchFileException e) {
+            return List.of();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Stream<Path> listDirectory(Path directory) {
+        try {
+            return Files.list(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean hasFlatFiles() throws IOException {
+        try (DirectoryStream<Path> flatFiles = Files.newDirectoryStream(rootPath, this::isFlatFile)) {
+            return flatFiles.iterator().hasNext();
+        }
+    }
+
+    private boolean isFlatFile(Path path) {
+        return !path.getFileName().toString().startsWith(HIDDEN_PREFIX) && Files.isRegularFile(path);
+    }
+
+    private void removeStaleTempFiles() throws IOException {
+        Instant staleBefore = Instant.now().minus(STALE_TEMP_FILE_AGE);
+        try (DirectoryStream<Path> tempFiles = Files.newDirectoryStream(tempPath)) {
+            for (Path tempFile : tempFiles) {
+                if (Files.getLastModifiedTime(tempFile).toInstant().isBefore(staleBefore)) {
+                    Files.deleteIfExists(tempFile);
+                }
+            }
+        }
+    }
+
+    private static long transfer(InputStream inputStream, FileChannel fileChannel, long offset) throws IOException {
+        byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+        long position = offset;
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+            while (byteBuffer.hasRemaining()) {
+                position += fileChannel.write(byteBuffer, position);
+            }
+        }
+        return position - offset;
+    }
+
+    private static MessageDigest createMessageDigest() {
+        try {
+            return MessageDigest.getInstance(SHARD_DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
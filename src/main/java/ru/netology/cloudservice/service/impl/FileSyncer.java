@@ -0,0 +1,58 @@
+package ru.netology.cloudservice.service.impl;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Decides how written contents are flushed to the disk before they become visible under their uid.
+ */
+public interface FileSyncer {
+
+    /**
+     * Leaves flushing to the operating system.
+     */
+    FileSyncer NONE = new FileSyncer() {
+        @Override
+        public void sync(FileChannel fileChannel) {
+        }
+
+        @Override
+        public void syncDirectory(Path directory) {
+        }
+    };
+
+    /**
+     * Flushes every file and its directory entry as soon as it is written.
+     */
+    FileSyncer PER_FILE = new FileSyncer() {
+        @Override
+        public void sync(FileChannel fileChannel) throws IOException {
+            fileChannel.force(true);
+        }
+
+        @Override
+        public void syncDirectory(Path directory) throws IOException {
+            forceDirectory(directory);
+        }
+    };
+
+    void sync(FileChannel fileChannel) throws IOException;
+
+    void syncDirectory(Path directory) throws IOException;
+
+    static void forceDirectory(Path directory) throws IOException {
+        FileChannel directoryChannel;
+        try {
+            directoryChannel = FileChannel.open(directory, READ);
+        } catch (IOException e) {
+            // directories cannot be opened on every platform, their entries are flushed with the file system then
+            return;
+        }
+        try (directoryChannel) {
+            directoryChannel.force(true);
+        }
+    }
+}
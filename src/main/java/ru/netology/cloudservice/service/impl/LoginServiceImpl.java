@@ -1,33 +1,42 @@
 package ru.netology.cloudservice.service.impl;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import ru.netology.cloudservice.model.request.LoginRequest;
 import ru.netology.cloudservice.model.response.LoginResponse;
 import ru.netology.cloudservice.service.LoginService;
+import ru.netology.cloudservice.service.PasswordVerifier;
 import ru.netology.cloudservice.service.TokenRegistrar;
+import ru.netology.cloudservice.service.UserIdResolver;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class LoginServiceImpl implements LoginService {
 
     private final UserDetailsService userDetailsService;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordVerifier passwordVerifier;
     private final TokenRegistrar tokenRegistrar;
+    private final UserIdResolver userIdResolver;
+    private final UserDetailsPasswordService userDetailsPasswordService;
 
     @Override
     public LoginResponse login(LoginRequest loginRequest) {
         UserDetails userDetails = userDetailsService.loadUserByUsername(loginRequest.getLogin());
-        if (!passwordEncoder.matches(loginRequest.getPassword(), userDetails.getPassword())) {
+        if (!passwordVerifier.matches(userDetails, loginRequest.getPassword())) {
             throw new BadCredentialsException("Incorrect password.");
         }
         if (!userDetails.isEnabled()) {
+            userIdResolver.evict(userDetails.getUsername());
             throw new BadCredentialsException("User is not enabled.");
         }
+        upgradePasswordEncoding(userDetails, loginRequest.getPassword());
+        userIdResolver.resolve(userDetails.getUsername());
         String token = tokenRegistrar.register(userDetails);
         return new LoginResponse(token);
     }
@@ -37,4 +46,13 @@ public class LoginServiceImpl implements LoginService {
         tokenRegistrar.revoke(login, token);
     }
 
+    private void upgradePasswordEncoding(UserDetails userDetails, String rawPassword) {
+        try {
+            passwordVerifier.upgradeEncoding(userDetails, rawPassword)
+                    .ifPresent(encodedPassword -> userDetailsPasswordService.updatePassword(userDetails, encodedPassword));
+        } catch (RuntimeException e) {
+            log.warn("Password encoding upgrade skipped for {}: {}", userDetails.getUsername(), e.getMessage());
+        }
+    }
+
 }
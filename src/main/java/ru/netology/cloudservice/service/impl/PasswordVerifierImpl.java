@@ -0,0 +1,137 @@
+package ru.netology.cloudservice.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import ru.netology.cloudservice.exception.ServiceOverloadedException;
+import ru.netology.cloudservice.service.PasswordVerifier;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.concurrent.*;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Verifies passwords on a dedicated bounded pool, so slow password hashing cannot occupy
+ * every request thread. When the pool and its queue are full the check is rejected at once.
+ * <p>
+ * Recently verified credentials are remembered for a short time, so repeated logins skip the hashing.
+ * Only a keyed HMAC of the credentials is kept, the key is generated per process and never leaves memory.
+ * The stored password hash is part of the key, so a password change invalidates the entry.
+ */
+@Service
+public class PasswordVerifierImpl implements PasswordVerifier, DisposableBean {
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private final PasswordEncoder passwordEncoder;
+    private final Cache<String, Boolean> verifiedCredentialsCache;
+    private final SecretKey credentialsKey;
+    private final ThreadPoolExecutor passwordHashingExecutor;
+    private final Timer hashingTimer;
+    private final Counter rejectedCounter;
+
+    public PasswordVerifierImpl(
+            PasswordEncoder passwordEncoder,
+            MeterRegistry meterRegistry,
+            @Value("${application.security.credential-cache.ttl:PT5M}") Duration credentialCacheTtl,
+            @Value("${application.security.user-cache-size:10000}") long cacheSize,
+            @Value("${application.security.password-hashing.threads:0}") int hashingThreads,
+            @Value("${application.security.password-hashing.queue-capacity:64}") int hashingQueueCapacity
+    ) throws GeneralSecurityException {
+        this.passwordEncoder = passwordEncoder;
+        this.verifiedCredentialsCache = credentialCacheTtl.isZero()
+                ? null
+                : Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(credentialCacheTtl)
+                .build();
+        this.credentialsKey = KeyGenerator.getInstance(MAC_ALGORITHM).generateKey();
+
+        int threads = hashingThreads > 0 ? hashingThreads : Runtime.getRuntime().availableProcessors();
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("password-hashing-");
+        threadFactory.setDaemon(true);
+        this.passwordHashingExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                hashingQueueCapacity > 0 ? new ArrayBlockingQueue<>(hashingQueueCapacity) : new SynchronousQueue<>(),
+                threadFactory, new ThreadPoolExecutor.AbortPolicy());
+
+        this.hashingTimer = meterRegistry.timer("password.hashing.duration");
+        this.rejectedCounter = meterRegistry.counter("password.hashing.rejected");
+        meterRegistry.gauge("password.hashing.queue.size", passwordHashingExecutor, executor -> executor.getQueue().size());
+        meterRegistry.gauge("password.hashing.active", passwordHashingExecutor, ThreadPoolExecutor::getActiveCount);
+    }
+
+    @Override
+    public boolean matches(UserDetails userDetails, String rawPassword) {
+        if (verifiedCredentialsCache == null) {
+            return encoderMatches(rawPassword, userDetails.getPassword());
+        }
+        String credentialsDigest = digest(userDetails.getUsername(), rawPassword, userDetails.getPassword());
+        if (verifiedCredentialsCache.getIfPresent(credentialsDigest) != null) return true;
+        if (!encoderMatches(rawPassword, userDetails.getPassword())) return false;
+        verifiedCredentialsCache.put(credentialsDigest, Boolean.TRUE);
+        return true;
+    }
+
+    @Override
+    public Optional<String> upgradeEncoding(UserDetails userDetails, String rawPassword) {
+        if (!passwordEncoder.upgradeEncoding(userDetails.getPassword())) return Optional.empty();
+        return Optional.of(hash(() -> passwordEncoder.encode(rawPassword)));
+    }
+
+    @Override
+    public void destroy() {
+        passwordHashingExecutor.shutdownNow();
+    }
+
+    private boolean encoderMatches(String rawPassword, String encodedPassword) {
+        return hash(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    private <T> T hash(Callable<T> hashing) {
+        Future<T> result;
+        try {
+            result = passwordHashingExecutor.submit(() -> hashingTimer.recordCallable(hashing));
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            throw new ServiceOverloadedException("Too many concurrent logins, try again later.");
+        }
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private String digest(String userName, String rawPassword, String encodedPassword) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(credentialsKey);
+            for (String value : new String[]{userName, rawPassword, encodedPassword}) {
+                mac.update(value.getBytes(UTF_8));
+                mac.update((byte) 0);
+            }
+            return Base64.getEncoder().encodeToString(mac.doFinal());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
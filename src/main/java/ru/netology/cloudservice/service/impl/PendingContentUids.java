@@ -0,0 +1,28 @@
+package ru.netology.cloudservice.service.impl;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Uids of contents that are already stored but not registered yet. Only uploads of this node are known here,
+ * those of other nodes are covered by the reconciliation grace period.
+ */
+@Component
+public class PendingContentUids {
+
+    private final Set<String> uids = ConcurrentHashMap.newKeySet();
+
+    public void add(String uid) {
+        uids.add(uid);
+    }
+
+    public void remove(String uid) {
+        uids.remove(uid);
+    }
+
+    public boolean contains(String uid) {
+        return uids.contains(uid);
+    }
+}
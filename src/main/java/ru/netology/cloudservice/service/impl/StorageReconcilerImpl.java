@@ -0,0 +1,206 @@
+package ru.netology.cloudservice.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.netology.cloudservice.entity.ReconcileCursor;
+import ru.netology.cloudservice.model.dto.ReconciliationReportDto;
+import ru.netology.cloudservice.model.projection.FileContentProjection;
+import ru.netology.cloudservice.repository.FileInfoRepository;
+import ru.netology.cloudservice.repository.ReconcileCursorRepository;
+import ru.netology.cloudservice.repository.UploadSessionRepository;
+import ru.netology.cloudservice.service.FileContentStorage;
+import ru.netology.cloudservice.service.StorageReconciler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Finds drift between the storage and the database without loading either side into memory.
+ * <p>
+ * Stored contents are walked in the stable order of {@link FileContentStorage#listAfter} in batches,
+ * each batch is checked against files and upload sessions with a single {@code IN} query. Contents
+ * of uploads this node is still registering are skipped, as are contents newer than the grace period,
+ * which may belong to such an upload on another node.
+ * Live files are walked in id order and checked against the storage. Both walks save their position
+ * after each batch, so a run interrupted by a restart resumes where it stopped. A storage without
+ * an ordered listing is walked from the start on every run. With {@code fix} enabled the storage also
+ * sweeps space left unreferenced by a crash, see {@link FileContentStorage#purgeUnreferenced()}.
+ */
+@Slf4j
+@Service
+public class StorageReconcilerImpl implements StorageReconciler {
+    static final String CONTENTS_CURSOR = "contents";
+    static final String FILES_CURSOR = "files";
+
+    private final FileInfoRepository fileInfoRepository;
+    private final UploadSessionRepository uploadSessionRepository;
+    private final ReconcileCursorRepository reconcileCursorRepository;
+    private final PendingContentUids pendingContentUids;
+    private final FileContentStorage fileContentStorage;
+    private final boolean fix;
+    private final int batchSize;
+    private final Duration batchDelay;
+    private final Duration gracePeriod;
+    private final Counter orphanContentsCounter;
+    private final Counter danglingFilesCounter;
+    private final Counter purgedBytesCounter;
+
+    public StorageReconcilerImpl(
+            FileInfoRepository fileInfoRepository,
+            UploadSessionRepository uploadSessionRepository,
+            ReconcileCursorRepository reconcileCursorRepository,
+            PendingContentUids pendingContentUids,
+            FileContentStorage fileContentStorage,
+            MeterRegistry meterRegistry,
+            @Value("${application.userfiles.reconcile.fix:false}") boolean fix,
+            @Value("${application.userfiles.reconcile.batch-size:1000}") int batchSize,
+            @Value("${application.userfiles.reconcile.batch-delay:PT0.1S}") Duration batchDelay,
+            @Value("${application.userfiles.reconcile.grace-period:PT1H}") Duration gracePeriod
+    ) {
+        this.fileInfoRepository = fileInfoRepository;
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.reconcileCursorRepository = reconcileCursorRepository;
+        this.pendingContentUids = pendingContentUids;
+        this.fileContentStorage = fileContentStorage;
+        this.fix = fix;
+        this.batchSize = batchSize;
+        this.batchDelay = batchDelay;
+        this.gracePeriod = gracePeriod;
+        this.orphanContentsCounter = meterRegistry.counter("storage.reconcile.orphan.contents");
+        this.danglingFilesCounter = meterRegistry.counter("storage.reconcile.dangling.files");
+        this.purgedBytesCounter = meterRegistry.counter("storage.reconcile.purged.bytes");
+    }
+
+    @Override
+    @Scheduled(
+            initialDelayString = "${application.userfiles.reconcile.interval:PT24H}",
+            fixedDelayString = "${application.userfiles.reconcile.interval:PT24H}"
+    )
+    public synchronized ReconciliationReportDto reconcile() {
+        try {
+            long orphanContents = reconcileContents();
+            long danglingFiles = reconcileFiles();
+            if (fix) purgedBytesCounter.increment(fileContentStorage.purgeUnreferenced());
+            log.info("Storage reconciliation: {} orphan contents, {} dangling files{}",
+                    orphanContents, danglingFiles, fix ? ", fixed" : "");
+            return new ReconciliationReportDto(orphanContents, danglingFiles, fix);
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Storage reconciliation failed: {}", e.getMessage());
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private long reconcileContents() throws IOException {
+        Instant modifiedBefore = Instant.now().minus(gracePeriod);
+        long orphans = 0;
+        Stream<String> contents;
+        boolean resumable;
+        try {
+            contents = fileContentStorage.listAfter(loadCursor(CONTENTS_CURSOR));
+            resumable = true;
+        } catch (UnsupportedOperationException e) {
+            contents = fileContentStorage.list();
+            resumable = false;
+        }
+        try (Stream<String> uids = contents) {
+            Iterator<String> iterator = uids.iterator();
+            List<String> batch = new ArrayList<>(batchSize);
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() == batchSize || !iterator.hasNext()) {
+                    orphans += reconcileContents(batch, modifiedBefore);
+                    if (resumable) saveCursor(CONTENTS_CURSOR, batch.get(batch.size() - 1));
+                    batch.clear();
+                    if (iterator.hasNext() && !pause()) return orphans;
+                }
+            }
+        }
+        if (resumable) saveCursor(CONTENTS_CURSOR, null);
+        return orphans;
+    }
+
+    private long reconcileContents(List<String> uids, Instant modifiedBefore) throws IOException {
+        Set<String> referenced = new HashSet<>(fileInfoRepository.findExistingContentUids(uids));
+        referenced.addAll(uploadSessionRepository.findExistingIds(uids));
+        long orphans = 0;
+        for (String uid : uids) {
+            if (referenced.contains(uid) || pendingContentUids.contains(uid)
+                    || !isModifiedBefore(uid, modifiedBefore)) continue;
+            orphans++;
+            orphanContentsCounter.increment();
+            log.debug("Orphan content {}", uid);
+            if (fix) removeContent(uid);
+        }
+        return orphans;
+    }
+
+    private long reconcileFiles() {
+        long dangling = 0;
+        String savedCursor = loadCursor(FILES_CURSOR);
+        long filesCursor = savedCursor == null ? 0 : Long.parseLong(savedCursor);
+        List<FileContentProjection> files;
+        do {
+            files = fileInfoRepository.findLiveAfter(filesCursor, PageRequest.of(0, batchSize));
+            if (files.isEmpty()) break;
+            List<Long> danglingIds = files.stream()
+                    .filter(file -> !fileContentStorage.contains(file.getContentUid()))
+                    .map(FileContentProjection::getId)
+                    .collect(Collectors.toList());
+            if (!danglingIds.isEmpty()) {
+                dangling += danglingIds.size();
+                danglingFilesCounter.increment(danglingIds.size());
+                log.debug("Dangling files {}", danglingIds);
+                if (fix) fileInfoRepository.markDeleted(danglingIds, Instant.now());
+            }
+            filesCursor = files.get(files.size() - 1).getId();
+            saveCursor(FILES_CURSOR, String.valueOf(filesCursor));
+        } while (files.size() == batchSize && pause());
+        if (files.size() < batchSize) saveCursor(FILES_CURSOR, null);
+        return dangling;
+    }
+
+    private String loadCursor(String name) {
+        return reconcileCursorRepository.findById(name).map(ReconcileCursor::getLastKey).orElse(null);
+    }
+
+    private void saveCursor(String name, String lastKey) {
+        reconcileCursorRepository.save(new ReconcileCursor(name, lastKey, Instant.now()));
+    }
+
+    private boolean isModifiedBefore(String uid, Instant modifiedBefore) throws IOException {
+        try {
+            return fileContentStorage.getLastModified(uid).isBefore(modifiedBefore);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    private void removeContent(String uid) {
+        try {
+            fileContentStorage.remove(uid);
+        } catch (IOException e) {
+            log.warn("Failed to remove orphan content {}: {}", uid, e.getMessage());
+        }
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(batchDelay.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package ru.netology.cloudservice.service.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free token bucket. The balance and its refill time are swapped together with a CAS,
+ * so concurrent consumers never block each other.
+ */
+final class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double capacity;
+    private final LongSupplier nanoClock;
+    private final AtomicReference<State> state;
+
+    TokenBucket(double tokensPerSecond, double capacity, LongSupplier nanoClock) {
+        this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = Math.max(1, capacity);
+        this.nanoClock = nanoClock;
+        this.state = new AtomicReference<>(new State(this.capacity, nanoClock.getAsLong()));
+    }
+
+    /**
+     * Takes the tokens only if all of them are available.
+     *
+     * @return 0 when taken, otherwise nanoseconds until they will be available
+     */
+    long tryConsume(long tokens) {
+        while (true) {
+            State current = state.get();
+            State refilled = refill(current);
+            if (refilled.tokens < tokens) return nanosUntil(refilled, tokens);
+            if (state.compareAndSet(current, new State(refilled.tokens - tokens, refilled.nanos))) return 0;
+        }
+    }
+
+    /**
+     * Takes the tokens unconditionally, letting the balance go into debt.
+     *
+     * @return nanoseconds until the balance is no longer negative
+     */
+    long consume(long tokens) {
+        while (true) {
+            State current = state.get();
+            State refilled = refill(current);
+            State consumed = new State(refilled.tokens - tokens, refilled.nanos);
+            if (state.compareAndSet(current, consumed)) return nanosUntil(consumed, 0);
+        }
+    }
+
+    /**
+     * @return nanoseconds until the balance is no longer negative
+     */
+    long debtNanos() {
+        return nanosUntil(refill(state.get()), 0);
+    }
+
+    private State refill(State current) {
+        long now = nanoClock.getAsLong();
+        if (now <= current.nanos) return current;
+        return new State(Math.min(capacity, current.tokens + (now - current.nanos) * tokensPerNano), now);
+    }
+
+    private long nanosUntil(State current, double tokens) {
+        if (current.tokens >= tokens) return 0;
+        return (long) Math.ceil((tokens - current.tokens) / tokensPerNano);
+    }
+
+    private static final class State {
+        private final double tokens;
+        private final long nanos;
+
+        private State(double tokens, long nanos) {
+            this.tokens = tokens;
+            this.nanos = nanos;
+        }
+    }
+}
@@ -1,6 +1,15 @@
 package ru.netology.cloudservice.service.impl;
 
-import lombok.RequiredArgsConstructor;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.oauth2.core.OAuth2Token;
 import org.springframework.stereotype.Service;
@@ -9,13 +18,47 @@ import ru.netology.cloudservice.entity.RegisteredToken;
 import ru.netology.cloudservice.repository.RegisteredTokenRepository;
 import ru.netology.cloudservice.service.TokenProducer;
 import ru.netology.cloudservice.service.TokenRegistrar;
+import ru.netology.cloudservice.service.TokenRevocationBus;
+import ru.netology.cloudservice.util.TokenDigest;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static ru.netology.cloudservice.util.TransactionCallbacks.afterCommit;
+
+@Slf4j
 @Service
-@RequiredArgsConstructor
 public class TokenRegistrarImpl implements TokenRegistrar {
 
     private final TokenProducer tokenProducer;
     private final RegisteredTokenRepository registeredTokenRepository;
+    private final TokenRevocationBus tokenRevocationBus;
+    private final Cache<String, Instant> registeredTokensCache;
+    private final int purgeBatchSize;
+    private final Counter purgedTokensCounter;
+    private final Timer purgeTimer;
+
+    public TokenRegistrarImpl(
+            TokenProducer tokenProducer,
+            RegisteredTokenRepository registeredTokenRepository,
+            TokenRevocationBus tokenRevocationBus,
+            MeterRegistry meterRegistry,
+            @Value("${application.security.token.cache-size:10000}") long cacheSize,
+            @Value("${application.security.token.purge.batch-size:1000}") int purgeBatchSize
+    ) {
+        this.tokenProducer = tokenProducer;
+        this.registeredTokenRepository = registeredTokenRepository;
+        this.tokenRevocationBus = tokenRevocationBus;
+        this.purgeBatchSize = purgeBatchSize;
+        this.purgedTokensCounter = meterRegistry.counter("tokens.purged");
+        this.purgeTimer = meterRegistry.timer("tokens.purge.duration");
+        this.registeredTokensCache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfter(new ExpiresAtExpiry())
+                .build();
+        tokenRevocationBus.subscribe(new RevocationListener());
+    }
 
     @Override
     @Transactional
@@ -26,25 +69,106 @@ public class TokenRegistrarImpl implements TokenRegistrar {
     }
 
     private void register(String clientId, OAuth2Token token) {
+        String tokenDigest = TokenDigest.of(token.getTokenValue());
         registeredTokenRepository.saveAndFlush(
                 new RegisteredToken(
-                        token.getTokenValue(),
+                        tokenDigest,
                         clientId,
                         token.getIssuedAt(),
                         token.getExpiresAt()
                 )
         );
+        registeredTokensCache.put(tokenDigest, token.getExpiresAt());
     }
 
     @Override
     public boolean isRegistered(String token) {
-        return registeredTokenRepository.existsById(token);
+        String tokenDigest = TokenDigest.of(token);
+        if (registeredTokensCache.getIfPresent(tokenDigest) != null) return true;
+        return registeredTokenRepository.findById(tokenDigest)
+                .map(registeredToken -> {
+                    Instant expiresAt = registeredToken.getExpiresAt();
+                    if (expiresAt == null) return true;
+                    if (expiresAt.isBefore(Instant.now())) return false;
+                    registeredTokensCache.put(tokenDigest, expiresAt);
+                    return true;
+                })
+                .orElse(false);
     }
 
     @Override
     @Transactional
     public void revoke(String clientId, String token) {
-        registeredTokenRepository.findFirstByLoginAndToken(clientId, token)
+        String tokenDigest = TokenDigest.of(token);
+        registeredTokenRepository.findFirstByLoginAndTokenDigest(clientId, tokenDigest)
                 .ifPresent(registeredTokenRepository::delete);
+        // until commit the row is still visible, a concurrent isRegistered() would cache it again
+        afterCommit(() -> {
+            registeredTokensCache.invalidate(tokenDigest);
+            try {
+                tokenRevocationBus.publish(tokenDigest);
+            } catch (RuntimeException e) {
+                // the row is gone, other nodes may still accept their cached entry until the token expires
+                log.warn("Failed to publish token revocation", e);
+            }
+        });
+    }
+
+    /**
+     * Deletes expired tokens in batches, each batch in its own transaction.
+     *
+     * @return number of deleted tokens
+     */
+    @Scheduled(
+            initialDelayString = "${application.security.token.purge.interval:PT1H}",
+            fixedDelayString = "${application.security.token.purge.interval:PT1H}"
+    )
+    public long purgeExpired() {
+        return purgeTimer.record(() -> {
+            Instant expiredBefore = Instant.now();
+            long purged = 0;
+            List<String> expiredTokens;
+            do {
+                expiredTokens = registeredTokenRepository.findExpiredTokens(
+                        expiredBefore, PageRequest.of(0, purgeBatchSize));
+                if (!expiredTokens.isEmpty()) {
+                    registeredTokenRepository.deleteAllByIdInBatch(expiredTokens);
+                    purgedTokensCounter.increment(expiredTokens.size());
+                    purged += expiredTokens.size();
+                }
+            } while (expiredTokens.size() == purgeBatchSize);
+            return purged;
+        });
+    }
+
+    private class RevocationListener implements TokenRevocationBus.Listener {
+
+        @Override
+        public void onRevoked(String tokenDigest) {
+            registeredTokensCache.invalidate(tokenDigest);
+        }
+
+        @Override
+        public void onReset() {
+            registeredTokensCache.invalidateAll();
+        }
+    }
+
+    private static class ExpiresAtExpiry implements Expiry<String, Instant> {
+
+        @Override
+        public long expireAfterCreate(String token, Instant expiresAt, long currentTime) {
+            return Math.max(0, Duration.between(Instant.now(), expiresAt).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(String token, Instant expiresAt, long currentTime, long currentDuration) {
+            return expireAfterCreate(token, expiresAt, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String token, Instant expiresAt, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
 }
@@ -0,0 +1,24 @@
+package ru.netology.cloudservice.service.impl;
+
+import ru.netology.cloudservice.service.TokenRevocationBus;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-process bus for a single node deployment and tests.
+ */
+public class TokenRevocationBusLocalImpl implements TokenRevocationBus {
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(String tokenDigest) {
+        listeners.forEach(listener -> listener.onRevoked(tokenDigest));
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+}
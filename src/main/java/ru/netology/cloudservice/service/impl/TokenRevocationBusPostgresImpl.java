@@ -0,0 +1,88 @@
+package ru.netology.cloudservice.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.netology.cloudservice.service.TokenRevocationBus;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Bus over PostgreSQL LISTEN/NOTIFY. Callers publish after their transaction commits, so a
+ * notification is sent in its own statement and a failed send does not undo the revocation.
+ * A listening connection is held out of the pool for the whole lifetime of the bus.
+ */
+@Slf4j
+public class TokenRevocationBusPostgresImpl implements TokenRevocationBus, AutoCloseable {
+    private static final String CHANNEL = "token_revoked";
+    private static final int POLL_TIMEOUT_MILLIS = 500;
+    private static final long RECONNECT_DELAY_MILLIS = 5000;
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Thread listenerThread;
+    private volatile boolean running;
+
+    public TokenRevocationBusPostgresImpl(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.listenerThread = new Thread(this::listen, "token-revocation-listener");
+        this.listenerThread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        listenerThread.start();
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        running = false;
+        listenerThread.interrupt();
+        listenerThread.join(RECONNECT_DELAY_MILLIS);
+    }
+
+    @Override
+    public void publish(String tokenDigest) {
+        jdbcTemplate.query("SELECT pg_notify(?, ?)", resultSet -> null, CHANNEL, tokenDigest);
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                listeners.forEach(Listener::onReset);
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MILLIS);
+                    if (notifications == null) continue;
+                    for (PGNotification notification : notifications) {
+                        listeners.forEach(listener -> listener.onRevoked(notification.getParameter()));
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) return;
+                log.warn("Token revocation listener connection failed, reconnecting", e);
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package ru.netology.cloudservice.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.time.Duration;
+
+public class UserCacheCaffeineImpl implements UserCache {
+
+    private final Cache<String, UserDetails> userDetailsCache;
+
+    public UserCacheCaffeineImpl(long maximumSize, Duration timeToLive) {
+        this.userDetailsCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .build();
+    }
+
+    @Override
+    public UserDetails getUserFromCache(String username) {
+        return userDetailsCache.getIfPresent(username);
+    }
+
+    @Override
+    public void putUserInCache(UserDetails user) {
+        userDetailsCache.put(user.getUsername(), user);
+    }
+
+    @Override
+    public void removeUserFromCache(String username) {
+        userDetailsCache.invalidate(username);
+    }
+}
@@ -0,0 +1,22 @@
+package ru.netology.cloudservice.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserCache;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+import ru.netology.cloudservice.repository.UserRepository;
+
+@RequiredArgsConstructor
+public class UserDetailsPasswordServiceJpaImpl implements UserDetailsPasswordService {
+
+    private final UserRepository userRepository;
+    private final UserCache userCache;
+
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        userRepository.updatePassword(user.getUsername(), newPassword);
+        userCache.removeUserFromCache(user.getUsername());
+        return User.withUserDetails(user).password(newPassword).build();
+    }
+}
@@ -1,21 +1,28 @@
 package ru.netology.cloudservice.service.impl;
 
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionOperations;
 import ru.netology.cloudservice.entity.FileInfo;
-import ru.netology.cloudservice.entity.UserEntity;
+import ru.netology.cloudservice.exception.FileConflictException;
 import ru.netology.cloudservice.model.dto.FileContentDto;
 import ru.netology.cloudservice.model.dto.FileInfoDto;
+import ru.netology.cloudservice.model.dto.FileInfoPageDto;
+import ru.netology.cloudservice.model.projection.FileInfoProjection;
 import ru.netology.cloudservice.repository.FileInfoRepository;
 import ru.netology.cloudservice.repository.UserRepository;
 import ru.netology.cloudservice.service.FileContentStorage;
 import ru.netology.cloudservice.service.UserFilesService;
+import ru.netology.cloudservice.service.UserIdResolver;
 
+import javax.validation.ValidationException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.FileAlreadyExistsException;
+import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -23,86 +30,184 @@ import java.util.stream.Collectors;
 import java.util.zip.CRC32;
 import java.util.zip.CheckedInputStream;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 @RequiredArgsConstructor
 public class UserFilesServiceJpaImpl implements UserFilesService {
 
     private final UserRepository userRepository;
+    private final UserIdResolver userIdResolver;
     private final FileInfoRepository fileInfoRepository;
     private final FileContentStorage fileContentStorage;
+    private final TransactionOperations transactionOperations;
+    private final PendingContentUids pendingContentUids;
 
     @Override
-    public List<FileInfoDto> findFilesList(String userName, int limit) {
-        return fileInfoRepository.findAllByOwnerUsernameAndDeletedAtIsNull(userName)
-                .stream()
-                .limit(limit)
-                .map(fileInfo -> new FileInfoDto(fileInfo.getFilename(), fileInfo.getFilesize(), fileInfo.getHash()))
-                .collect(Collectors.toList());
+    @Transactional(readOnly = true)
+    public FileInfoPageDto findFilesPage(String userName, int limit, String cursor) {
+        long ownerId = userIdResolver.resolve(userName);
+        PageRequest pageRequest = PageRequest.ofSize((int) Math.min((long) limit + 1, Integer.MAX_VALUE));
+        List<FileInfoProjection> files;
+        if (cursor == null || cursor.isEmpty()) {
+            files = fileInfoRepository.findPage(ownerId, pageRequest);
+        } else {
+            Cursor after = Cursor.decode(cursor);
+            files = fileInfoRepository.findPageAfter(ownerId, after.filename, after.id, pageRequest);
+        }
+
+        String nextCursor = null;
+        if (files.size() > limit) {
+            files = files.subList(0, limit);
+            FileInfoProjection last = files.get(limit - 1);
+            nextCursor = new Cursor(last.getFilename(), last.getId()).encode();
+        }
+        return new FileInfoPageDto(
+                files.stream()
+                        .map(UserFilesServiceJpaImpl::toFileInfoDto)
+                        .collect(Collectors.toList()),
+                nextCursor
+        );
     }
 
     @Override
+    @Transactional(readOnly = true)
     public Optional<FileInfoDto> findFileInfo(String userName, String fileName) {
-        return fileInfoRepository.findFirstByOwnerUsernameAndFilenameAndDeletedAtIsNull(userName, fileName)
-                .map(fileInfo -> new FileInfoDto(fileInfo.getFilename(), fileInfo.getFilesize(), fileInfo.getHash()));
+        return fileInfoRepository.findProjectionByOwnerIdAndFilenameAndDeletedAtIsNull(
+                        userIdResolver.resolve(userName), fileName)
+                .map(UserFilesServiceJpaImpl::toFileInfoDto);
     }
 
-    private FileInfo findFileOrElseThrow(String userName, String fileName) throws FileNotFoundException {
-        return fileInfoRepository.findFirstByOwnerUsernameAndFilenameAndDeletedAtIsNull(userName, fileName)
+    private static FileInfoDto toFileInfoDto(FileInfoProjection fileInfo) {
+        return new FileInfoDto(fileInfo.getFilename(), fileInfo.getFilesize(), fileInfo.getHash());
+    }
+
+    private FileInfo findFileOrElseThrow(long ownerId, String fileName) throws FileNotFoundException {
+        return fileInfoRepository.findFirstByOwnerIdAndFilenameAndDeletedAtIsNull(ownerId, fileName)
                 .orElseThrow(() -> new FileNotFoundException(fileName));
     }
 
     @Override
     @Transactional
     public void deleteFile(String userName, String fileName) throws IOException {
-        ru.netology.cloudservice.entity.FileInfo fileInfo = findFileOrElseThrow(userName, fileName);
+        FileInfo fileInfo = findFileOrElseThrow(userIdResolver.resolve(userName), fileName);
         fileInfo.setDeleted(true);
     }
 
     @Override
     @Transactional
     public void renameFile(String userName, String oldFileName, String newFileName) throws IOException {
-        FileInfo fileInfo = findFileOrElseThrow(userName, oldFileName);
-        if (fileInfoRepository.findFirstByOwnerUsernameAndFilenameAndDeletedAtIsNull(userName, newFileName).isPresent()) {
+        long ownerId = userIdResolver.resolve(userName);
+        FileInfo fileInfo = findFileOrElseThrow(ownerId, oldFileName);
+        if (fileInfoRepository.findFirstByOwnerIdAndFilenameAndDeletedAtIsNull(ownerId, newFileName).isPresent()) {
             throw new FileAlreadyExistsException(newFileName);
         }
         fileInfo.setFilename(newFileName);
+        flushOrElseThrowConflict(newFileName);
     }
 
     @Override
     public FileContentDto openFile(String userName, String fileName) throws IOException {
-        FileInfo fileInfo = findFileOrElseThrow(userName, fileName);
+        FileInfo fileInfo = findFileOrElseThrow(userIdResolver.resolve(userName), fileName);
         String uid = fileInfo.getContentUid();
-        return new FileContentDto(fileContentStorage.get(uid), fileInfo.getHash());
+        return new FileContentDto(fileContentStorage.getResource(uid), fileInfo.getHash(),
+                fileContentStorage.getDeflated(uid).orElse(null));
     }
 
+    /**
+     * The content is streamed before the transaction starts, so a slow upload does not hold a DB connection.
+     */
     @Override
-    @Transactional
     public void saveFile(String userName, String fileName, String hash, InputStream inputStream) throws IOException {
-        Long ownerId = userRepository.findIdByUsername(userName)
-                .orElseThrow(() -> new UsernameNotFoundException(userName));
-        UserEntity owner = userRepository.getReferenceById(ownerId);
-
-        fileInfoRepository.findAllByOwnerUsernameAndFilenameAndDeletedAtIsNull(userName, fileName)
-                .forEach(oldFile -> oldFile.setDeleted(true));
+        long ownerId = userIdResolver.resolve(userName);
 
         String uid = UUID.randomUUID().toString();
         long fileSize;
         String calculatedHash;
 
-        try (CheckedInputStream checkedInputStream = new CheckedInputStream(inputStream, new CRC32())) {
-            fileSize = fileContentStorage.put(uid, checkedInputStream);
-            calculatedHash = Long.toHexString(checkedInputStream.getChecksum().getValue());
+        // keeps the reconciler away from the content until its row is committed
+        pendingContentUids.add(uid);
+        try {
+            try (CheckedInputStream checkedInputStream = new CheckedInputStream(inputStream, new CRC32())) {
+                fileSize = fileContentStorage.put(uid, checkedInputStream);
+                calculatedHash = Long.toHexString(checkedInputStream.getChecksum().getValue());
+            }
+
+            String fileHash = hash == null || hash.isBlank() ? calculatedHash : hash;
+            try {
+                transactionOperations.executeWithoutResult(status ->
+                        registerFile(ownerId, fileName, fileHash, uid, fileSize));
+            } catch (RuntimeException e) {
+                try {
+                    fileContentStorage.remove(uid);
+                } catch (IOException removeException) {
+                    e.addSuppressed(removeException);
+                }
+                throw e;
+            }
+        } finally {
+            pendingContentUids.remove(uid);
         }
+    }
+
+    @Override
+    @Transactional
+    public void registerFile(String userName, String fileName, String hash, String contentUid, long fileSize) {
+        registerFile(userIdResolver.resolve(userName), fileName, hash, contentUid, fileSize);
+    }
+
+    private void registerFile(long ownerId, String fileName, String hash, String contentUid, long fileSize) {
+        fileInfoRepository.findAllByOwnerIdAndFilenameAndDeletedAtIsNull(ownerId, fileName)
+                .forEach(oldFile -> oldFile.setDeleted(true));
+        // Hibernate flushes inserts before updates, the old version must leave the live-filename index first
+        fileInfoRepository.flush();
 
         FileInfo fileInfo = new FileInfo();
         fileInfo.setFilename(fileName);
-        fileInfo.setOwner(owner);
+        fileInfo.setOwner(userRepository.getReferenceById(ownerId));
         fileInfo.setFilesize(fileSize);
-        fileInfo.setContentUid(uid);
-
-        fileInfo.setHash(hash == null || hash.isBlank()
-                ? calculatedHash
-                : hash);
+        fileInfo.setContentUid(contentUid);
+        fileInfo.setHash(hash);
 
         fileInfoRepository.save(fileInfo);
+        flushOrElseThrowConflict(fileName);
+    }
+
+    private void flushOrElseThrowConflict(String fileName) {
+        try {
+            fileInfoRepository.flush();
+        } catch (DataIntegrityViolationException e) {
+            if (FileInfoRepository.isLiveFilenameConflict(e)) throw new FileConflictException(fileName);
+            throw e;
+        }
+    }
+
+    private static class Cursor {
+        private static final String SEPARATOR = ":";
+
+        private final String filename;
+        private final long id;
+
+        Cursor(String filename, long id) {
+            this.filename = filename;
+            this.id = id;
+        }
+
+        String encode() {
+            String position = id + SEPARATOR + filename;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(UTF_8));
+        }
+
+        static Cursor decode(String cursor) {
+            try {
+                String position = new String(Base64.getUrlDecoder().decode(cursor), UTF_8);
+                int separatorIndex = position.indexOf(SEPARATOR);
+                return new Cursor(
+                        position.substring(separatorIndex + 1),
+                        Long.parseLong(position.substring(0, separatorIndex))
+                );
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                throw new ValidationException("cursor: invalid value");
+            }
+        }
     }
 }
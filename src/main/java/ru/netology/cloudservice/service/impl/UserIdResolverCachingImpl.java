@@ -0,0 +1,41 @@
+package ru.netology.cloudservice.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Service;
+import ru.netology.cloudservice.repository.UserRepository;
+import ru.netology.cloudservice.service.UserIdResolver;
+
+/**
+ * Usernames never change, so a resolved id stays valid until the user is disabled.
+ */
+@Service
+public class UserIdResolverCachingImpl implements UserIdResolver {
+
+    private final UserRepository userRepository;
+    private final Cache<String, Long> userIdsCache;
+
+    public UserIdResolverCachingImpl(
+            UserRepository userRepository,
+            @Value("${application.security.user-cache-size:10000}") long cacheSize
+    ) {
+        this.userRepository = userRepository;
+        this.userIdsCache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .build();
+    }
+
+    @Override
+    public long resolve(String userName) {
+        Long userId = userIdsCache.get(userName, key -> userRepository.findIdByUsername(key).orElse(null));
+        if (userId == null) throw new UsernameNotFoundException(userName);
+        return userId;
+    }
+
+    @Override
+    public void evict(String userName) {
+        userIdsCache.invalidate(userName);
+    }
+}
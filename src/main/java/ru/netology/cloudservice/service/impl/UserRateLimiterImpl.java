@@ -0,0 +1,174 @@
+package ru.netology.cloudservice.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Service;
+import ru.netology.cloudservice.config.RateLimitProperties;
+import ru.netology.cloudservice.exception.TooManyRequestsException;
+import ru.netology.cloudservice.service.UserRateLimiter;
+
+import java.io.*;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps a request bucket and a byte bucket per user. Requests are rejected when out of tokens,
+ * byte streams are slowed down to the user's rate and new requests are rejected while
+ * the user still owes bytes.
+ */
+@Service
+public class UserRateLimiterImpl implements UserRateLimiter {
+    private static final Duration IDLE_BUCKETS_TTL = Duration.ofMinutes(10);
+
+    private final RateLimitProperties.Limit defaults;
+    private final Map<String, RateLimitProperties.Limit> authorityLimits;
+    private final LongSupplier nanoClock;
+    private final Cache<String, UserBuckets> userBucketsCache;
+
+    @Autowired
+    public UserRateLimiterImpl(
+            RateLimitProperties properties,
+            @Value("${application.security.user-cache-size:10000}") long cacheSize
+    ) {
+        this(properties, cacheSize, System::nanoTime);
+    }
+
+    UserRateLimiterImpl(RateLimitProperties properties, long cacheSize, LongSupplier nanoClock) {
+        this.defaults = properties.getDefaults();
+        this.authorityLimits = properties.getAuthorities();
+        this.nanoClock = nanoClock;
+        this.userBucketsCache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterAccess(IDLE_BUCKETS_TTL)
+                .build();
+    }
+
+    @Override
+    public void acquireRequest(Principal principal) throws TooManyRequestsException {
+        UserBuckets userBuckets = getUserBuckets(principal);
+        if (userBuckets.requests != null) {
+            long waitNanos = userBuckets.requests.tryConsume(1);
+            if (waitNanos > 0) {
+                throw new TooManyRequestsException("Too many requests.", Duration.ofNanos(waitNanos));
+            }
+        }
+        if (userBuckets.bytes != null) {
+            long debtNanos = userBuckets.bytes.debtNanos();
+            if (debtNanos > 0) {
+                throw new TooManyRequestsException("Transfer rate exceeded.", Duration.ofNanos(debtNanos));
+            }
+        }
+    }
+
+    @Override
+    public InputStream limit(Principal principal, InputStream inputStream) {
+        TokenBucket bytes = getUserBuckets(principal).bytes;
+        return bytes == null ? inputStream : new ThrottledInputStream(inputStream, bytes);
+    }
+
+    @Override
+    public OutputStream limit(Principal principal, OutputStream outputStream) {
+        TokenBucket bytes = getUserBuckets(principal).bytes;
+        return bytes == null ? outputStream : new ThrottledOutputStream(outputStream, bytes);
+    }
+
+    private UserBuckets getUserBuckets(Principal principal) {
+        return userBucketsCache.get(principal.getName(), userName -> createUserBuckets(principal));
+    }
+
+    private UserBuckets createUserBuckets(Principal principal) {
+        RateLimitProperties.Limit limit = resolveLimit(principal);
+        TokenBucket requests = limit.getRequestsPerSecond() > 0
+                ? new TokenBucket(limit.getRequestsPerSecond(), limit.getRequestBurst(), nanoClock)
+                : null;
+        TokenBucket bytes = limit.getBytesPerSecond().toBytes() > 0
+                ? new TokenBucket(limit.getBytesPerSecond().toBytes(), limit.getByteBurst().toBytes(), nanoClock)
+                : null;
+        return new UserBuckets(requests, bytes);
+    }
+
+    private RateLimitProperties.Limit resolveLimit(Principal principal) {
+        if (!(principal instanceof Authentication)) return defaults;
+        Set<String> authorities = ((Authentication) principal).getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .collect(Collectors.toSet());
+        return authorityLimits.entrySet().stream()
+                .filter(entry -> authorities.contains(entry.getKey()))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElse(defaults);
+    }
+
+    private static void pause(long nanos) throws InterruptedIOException {
+        if (nanos <= 0) return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Throttled transfer interrupted");
+        }
+    }
+
+    private static class UserBuckets {
+        private final TokenBucket requests;
+        private final TokenBucket bytes;
+
+        private UserBuckets(TokenBucket requests, TokenBucket bytes) {
+            this.requests = requests;
+            this.bytes = bytes;
+        }
+    }
+
+    private static class ThrottledInputStream extends FilterInputStream {
+        private final TokenBucket bytes;
+
+        ThrottledInputStream(InputStream inputStream, TokenBucket bytes) {
+            super(inputStream);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result != -1) pause(bytes.consume(1));
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+            if (result > 0) pause(bytes.consume(result));
+            return result;
+        }
+    }
+
+    private static class ThrottledOutputStream extends FilterOutputStream {
+        private final TokenBucket bytes;
+
+        ThrottledOutputStream(OutputStream outputStream, TokenBucket bytes) {
+            super(outputStream);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            pause(bytes.consume(1));
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            pause(bytes.consume(len));
+            out.write(b, off, len);
+        }
+    }
+}
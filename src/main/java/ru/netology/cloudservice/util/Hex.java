@@ -0,0 +1,19 @@
+package ru.netology.cloudservice.util;
+
+/**
+ * Lowercase hex encoding of digests.
+ */
+public final class Hex {
+
+    private Hex() {
+    }
+
+    public static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,24 @@
+package ru.netology.cloudservice.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Fixed-size key of a token: lowercase hex of its SHA-256.
+ */
+public final class TokenDigest {
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    public static final int LENGTH = 64;
+
+    private TokenDigest() {
+    }
+
+    public static String of(String token) {
+        try {
+            return Hex.toHex(MessageDigest.getInstance(DIGEST_ALGORITHM).digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
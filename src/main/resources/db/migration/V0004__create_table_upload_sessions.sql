@@ -0,0 +1,16 @@
+CREATE TABLE upload_sessions (
+    id VARCHAR(255) NOT NULL,
+    owner_id BIGINT NOT NULL,
+    filename VARCHAR(255) NOT NULL,
+    filesize BIGINT NOT NULL,
+    chunk_size BIGINT NOT NULL,
+    hash VARCHAR(255),
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE upload_session_chunks (
+    session_id VARCHAR(255) NOT NULL REFERENCES upload_sessions(id) ON DELETE CASCADE,
+    chunk_index INTEGER NOT NULL,
+    UNIQUE(session_id, chunk_index)
+);
@@ -0,0 +1 @@
+CREATE INDEX files_info_deleted_at_idx ON files_info (deleted_at);
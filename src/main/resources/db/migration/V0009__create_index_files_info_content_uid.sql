@@ -0,0 +1 @@
+CREATE INDEX files_info_content_uid_idx ON files_info (content_uid);
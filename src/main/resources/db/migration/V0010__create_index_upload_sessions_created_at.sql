@@ -0,0 +1 @@
+CREATE INDEX upload_sessions_created_at_idx ON upload_sessions (created_at);
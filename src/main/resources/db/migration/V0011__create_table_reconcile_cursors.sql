@@ -0,0 +1,6 @@
+CREATE TABLE reconcile_cursors (
+    name VARCHAR(64) NOT NULL,
+    last_key VARCHAR(255),
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (name)
+);
@@ -0,0 +1 @@
+ALTER TABLE upload_sessions ADD COLUMN committing BOOLEAN NOT NULL DEFAULT FALSE;
@@ -5,14 +5,25 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import com.nimbusds.jose.jwk.source.ImmutableSecret;
+import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
 import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.JwsHeader;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
 import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
 import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.security.oauth2.jwt.NimbusJwtEncoder;
 import org.springframework.security.oauth2.server.resource.introspection.OAuth2IntrospectionException;
 import org.springframework.security.oauth2.server.resource.introspection.OpaqueTokenIntrospector;
 import ru.netology.cloudservice.service.TokenRegistrar;
 
+import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
@@ -26,7 +37,9 @@ class OpaqueTokenIntrospectorTest {
     private static final String TEST_EMPTY_SIGN_TOKEN = "eyJhbGciOiJIUzI1NiJ9.eyJzdWIiOiJ0ZXN0X3VzZXIiLCJleHAiOjE2ODA1NDUxNDEsImlhdCI6MTY4MDQ1ODc0MSwic2NvcGUiOiJST0xFX1VTRVIifQ";
     private static final String JWT_SECRET = "6d735d1f-fdf2-46df-85d1-2e011ff5ed10";
     private static final String JWT_ALGORITHM = "HS256";
+    private static final long TEST_CACHE_SIZE = 16;
 
+    private static SecretKey secretKey;
     private static JwtDecoder jwtDecoder;
 
     @Mock
@@ -36,13 +49,13 @@ class OpaqueTokenIntrospectorTest {
 
     @BeforeAll
     static void beforeAll() {
-        var secretKey = new SecretKeySpec(JWT_SECRET.getBytes(), JWT_ALGORITHM);
+        secretKey = new SecretKeySpec(JWT_SECRET.getBytes(), JWT_ALGORITHM);
         jwtDecoder = NimbusJwtDecoder.withSecretKey(secretKey).build();
     }
 
     @BeforeEach
     void setUp() {
-        sut = new WebSecurityConfig().opaqueTokenIntrospector(jwtDecoder, tokenRegistrar);
+        sut = new WebSecurityConfig().opaqueTokenIntrospector(jwtDecoder, tokenRegistrar, TEST_CACHE_SIZE);
     }
 
     @Test
@@ -84,4 +97,32 @@ class OpaqueTokenIntrospectorTest {
         Assertions.assertThrows(BadJwtException.class, () ->
                 sut.introspect(TEST_EMPTY_SIGN_TOKEN));
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("introspect() повторная проверка токена не декодирует его заново")
+    void opaqueTokenIntrospector_cached_success() {
+        Instant issuedAt = Instant.now();
+        JwtClaimsSet claims = JwtClaimsSet.builder()
+                .subject(TEST_USER_NAME)
+                .issuedAt(issuedAt)
+                .expiresAt(issuedAt.plus(1, ChronoUnit.HOURS))
+                .claim("scope", List.of("ROLE_USER"))
+                .build();
+        String token = new NimbusJwtEncoder(new ImmutableSecret<>(secretKey))
+                .encode(JwtEncoderParameters.from(JwsHeader.with(MacAlgorithm.HS256).build(), claims))
+                .getTokenValue();
+        AtomicInteger decodeCount = new AtomicInteger();
+        JwtDecoder countingJwtDecoder = value -> {
+            decodeCount.incrementAndGet();
+            return jwtDecoder.decode(value);
+        };
+        sut = new WebSecurityConfig().opaqueTokenIntrospector(countingJwtDecoder, tokenRegistrar, TEST_CACHE_SIZE);
+        Mockito.when(tokenRegistrar.isRegistered(token)).thenReturn(true);
+
+        sut.introspect(token);
+        var auth2AuthenticatedPrincipal = sut.introspect(token);
+
+        assertThat(auth2AuthenticatedPrincipal.getName(), equalTo(TEST_USER_NAME));
+        assertThat(decodeCount.get(), equalTo(1));
+    }
+}
@@ -0,0 +1,41 @@
+package ru.netology.cloudservice.config;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UserDetailsConfigTest {
+    private static final String TEST_PASSWORD = "TEST_PASSWORD";
+    private static final Duration TEST_TARGET_DURATION = Duration.ofMillis(1);
+
+    private final UserDetailsConfig sut = new UserDetailsConfig();
+
+    @Test
+    @DisplayName("passwordEncoder() явная стоимость используется на нескольких узлах")
+    void passwordEncoder_explicit_strength_success() {
+        var passwordEncoder = sut.passwordEncoder(4, 4, TEST_TARGET_DURATION, false);
+        var encodedPassword = passwordEncoder.encode(TEST_PASSWORD);
+
+        assertThat(encodedPassword.startsWith("{bcrypt}$2a$04$"), is(true));
+        assertThat(passwordEncoder.upgradeEncoding(encodedPassword), is(false));
+    }
+
+    @Test
+    @DisplayName("passwordEncoder() ошибка. Калибровка стоимости без single-node")
+    void passwordEncoder_calibration_shared_failure() {
+        assertThrows(IllegalStateException.class, () -> sut.passwordEncoder(0, 4, TEST_TARGET_DURATION, false));
+    }
+
+    @Test
+    @DisplayName("passwordEncoder() калибровка стоимости на единственном узле")
+    void passwordEncoder_calibration_single_node_success() {
+        var passwordEncoder = sut.passwordEncoder(0, 4, TEST_TARGET_DURATION, true);
+
+        assertThat(passwordEncoder.matches(TEST_PASSWORD, passwordEncoder.encode(TEST_PASSWORD)), is(true));
+    }
+}
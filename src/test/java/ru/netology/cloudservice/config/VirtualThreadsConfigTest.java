@@ -0,0 +1,71 @@
+package ru.netology.cloudservice.config;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME;
+
+class VirtualThreadsConfigTest {
+    private static final String VIRTUAL_THREADS_PROPERTY = "application.server.virtual-threads";
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(TaskExecutionAutoConfiguration.class))
+            .withUserConfiguration(VirtualThreadsConfig.class);
+
+    @Test
+    @DisplayName("По умолчанию используется ограниченный пул потоков")
+    void default_bounded_pool_success() {
+        contextRunner.withPropertyValues(VIRTUAL_THREADS_PROPERTY + "=false").run(context -> {
+            assertThat(context.getBeansOfType(ExecutorService.class).isEmpty(), is(true));
+            assertThat(context.getBean(APPLICATION_TASK_EXECUTOR_BEAN_NAME), instanceOf(ThreadPoolTaskExecutor.class));
+        });
+    }
+
+    @Test
+    @DisplayName("virtual-threads без поддержки JDK ошибка при запуске контекста")
+    void virtualThreads_unsupported_jdk_failure() {
+        assumeFalse(isVirtualThreadsSupported());
+
+        contextRunner.withPropertyValues(VIRTUAL_THREADS_PROPERTY + "=true").run(context -> {
+            assertThat(context.getStartupFailure(), is(notNullValue()));
+            assertThat(rootCause(context.getStartupFailure()), instanceOf(NoSuchMethodException.class));
+        });
+    }
+
+    @Test
+    @DisplayName("virtual-threads подключает исполнитель виртуальных потоков")
+    void virtualThreads_supported_jdk_success() {
+        assumeTrue(isVirtualThreadsSupported());
+
+        contextRunner.withPropertyValues(VIRTUAL_THREADS_PROPERTY + "=true").run(context ->
+                assertThat(context.getBean(APPLICATION_TASK_EXECUTOR_BEAN_NAME), instanceOf(TaskExecutorAdapter.class)));
+    }
+
+    private static boolean isVirtualThreadsSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static Throwable rootCause(Throwable throwable) {
+        while (throwable.getCause() != null) throwable = throwable.getCause();
+        return throwable;
+    }
+}
@@ -13,6 +13,7 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.oauth2.server.resource.web.BearerTokenResolver;
@@ -21,6 +22,7 @@ import org.springframework.test.web.servlet.MockMvc;
 import ru.netology.cloudservice.model.request.LoginRequest;
 import ru.netology.cloudservice.service.TokenProducer;
 import ru.netology.cloudservice.service.TokenRegistrar;
+import ru.netology.cloudservice.service.UserIdResolver;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -57,6 +59,12 @@ class LoginControllerIT {
     @MockBean
     private BearerTokenResolver bearerTokenResolver;
 
+    @MockBean
+    private UserIdResolver userIdResolver;
+
+    @MockBean
+    private UserDetailsPasswordService userDetailsPasswordService;
+
     @Autowired
     private MockMvc mockMvc;
 
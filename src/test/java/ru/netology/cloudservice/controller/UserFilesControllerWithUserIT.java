@@ -1,6 +1,8 @@
 package ru.netology.cloudservice.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,16 +10,20 @@ import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabas
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import ru.netology.cloudservice.model.dto.FileContentDto;
 import ru.netology.cloudservice.model.dto.FileInfoDto;
+import ru.netology.cloudservice.model.dto.FileInfoPageDto;
 import ru.netology.cloudservice.model.request.RenameRequest;
 import ru.netology.cloudservice.service.UserFilesService;
+import ru.netology.cloudservice.service.UserRateLimiter;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
@@ -48,10 +54,14 @@ class UserFilesControllerWithUserIT {
     private static final String BAD_FILE_NAME = "??FILE/../NAME??.*";
     private static final String FILE_NAME_QUERY_PARAM = "filename";
     private static final String LIMIT_QUERY_PARAM = "limit";
+    private static final String CURSOR_QUERY_PARAM = "cursor";
 
     @MockBean
     private UserFilesService userFilesService;
 
+    @SpyBean
+    private UserRateLimiter userRateLimiter;
+
     @Autowired
     private MockMvc mockMvc;
 
@@ -64,19 +74,41 @@ class UserFilesControllerWithUserIT {
         int filesListLimit = 3;
         String path = "/list";
 
-        when(userFilesService.findFilesList(USER_NAME, filesListLimit))
-                .thenReturn(createRandomFileInfoResponseList(filesListLimit));
+        when(userFilesService.findFilesPage(USER_NAME, filesListLimit, null))
+                .thenReturn(new FileInfoPageDto(createRandomFileInfoResponseList(filesListLimit), null));
 
         mockMvc.perform(get(path)
                         .queryParam(LIMIT_QUERY_PARAM, String.valueOf(filesListLimit)))
                 .andExpectAll(
                         status().isOk(),
                         content().contentType(APPLICATION_JSON),
+                        header().doesNotExist(UserFilesController.NEXT_CURSOR_HEADER),
                         jsonPath("$[0].filename", containsString(FILE_NAME)),
                         jsonPath("$[0].size", greaterThanOrEqualTo(0))
                 ).andDo(print());
 
-        verify(userFilesService, times(1)).findFilesList(USER_NAME, filesListLimit);
+        verify(userFilesService, times(1)).findFilesPage(USER_NAME, filesListLimit, null);
+    }
+
+    @Test
+    @DisplayName("GET /list возвращает курсор следующей страницы")
+    public void getFilesList_next_cursor_success() throws Exception {
+        int filesListLimit = 3;
+        String cursor = "CURSOR";
+        String nextCursor = "NEXT_CURSOR";
+        String path = "/list";
+
+        when(userFilesService.findFilesPage(USER_NAME, filesListLimit, cursor))
+                .thenReturn(new FileInfoPageDto(createRandomFileInfoResponseList(filesListLimit), nextCursor));
+
+        mockMvc.perform(get(path)
+                        .queryParam(LIMIT_QUERY_PARAM, String.valueOf(filesListLimit))
+                        .queryParam(CURSOR_QUERY_PARAM, cursor))
+                .andExpectAll(
+                        status().isOk(),
+                        header().string(UserFilesController.NEXT_CURSOR_HEADER, nextCursor),
+                        jsonPath("$.length()").value(filesListLimit)
+                ).andDo(print());
     }
 
     private List<FileInfoDto> createRandomFileInfoResponseList(int maxSize) {
@@ -205,6 +237,31 @@ class UserFilesControllerWithUserIT {
                 .andDo(print());
     }
 
+    @Test
+    @DisplayName("GET /file повторная асинхронная диспетчеризация не расходует лимит запросов")
+    public void downloadFile_async_dispatch_counted_once() throws Exception {
+        when(userFilesService.openFile(USER_NAME, FILE_NAME))
+                .thenReturn(new FileContentDto(new ByteArrayInputStream(TEST_BYTES_ARRAY), "1234"));
+
+        MvcResult asyncResult = mockMvc.perform(get("/file")
+                        .queryParam(FILE_NAME_QUERY_PARAM, FILE_NAME))
+                .andReturn();
+        mockMvc.perform(asyncDispatch(asyncResult))
+                .andExpect(status().isOk());
+
+        verify(userRateLimiter, times(1)).acquireRequest(any());
+    }
+
+    @Test
+    @DisplayName("PUT /upload/{uploadId}/{chunk} учитывается в лимитах пользователя")
+    public void uploadChunk_rate_limited() throws Exception {
+        mockMvc.perform(put("/upload/{uploadId}/{chunk}", "missing_upload_id", 0)
+                .content(TEST_BYTES_ARRAY));
+
+        verify(userRateLimiter, times(1)).acquireRequest(any());
+        verify(userRateLimiter, times(1)).limit(any(), any(InputStream.class));
+    }
+
     @Test
     @DisplayName("GET /file закрывает прочитанный ресурс")
     public void downloadFile_stream_closing_success() throws Exception {
@@ -242,17 +299,35 @@ class UserFilesControllerWithUserIT {
     }
 
     @Test
-    @DisplayName("POST /file успешно принимает Multipart file")
-    public void uploadFile_success() throws Exception {
+    @DisplayName("POST /file потоковая загрузка Multipart без буферизации")
+    public void uploadFile_streaming_success() throws Exception {
         String path = "/file";
-        MockMultipartFile multipartFile = new MockMultipartFile(
-                "file", FILE_NAME, APPLICATION_OCTET_STREAM_VALUE, TEST_BYTES_ARRAY);
+        String testHash = "123456abcdef";
+        HttpEntity httpEntity = MultipartEntityBuilder.create()
+                .addTextBody("hash", testHash)
+                .addBinaryBody("file", TEST_BYTES_ARRAY)
+                .build();
 
+        mockMvc.perform(multipartPost(path, httpEntity)
+                        .queryParam(FILE_NAME_QUERY_PARAM, FILE_NAME))
+                .andExpect(status().isOk())
+                .andDo(print());
+
+        verify(userFilesService, times(1)).saveFile(eq(USER_NAME), eq(FILE_NAME), eq(testHash),
+                org.mockito.ArgumentMatchers.any(InputStream.class));
+    }
+
+    @Test
+    @DisplayName("POST /file hash в параметре запроса")
+    public void uploadFile_hash_query_param_success() throws Exception {
+        String path = "/file";
         String testHash = "123456abcdef";
+        HttpEntity httpEntity = MultipartEntityBuilder.create()
+                .addBinaryBody("file", TEST_BYTES_ARRAY)
+                .build();
 
-        mockMvc.perform(multipart(path)
-                        .file(multipartFile)
-                        .param("hash", testHash)
+        mockMvc.perform(multipartPost(path, httpEntity)
+                        .queryParam("hash", testHash)
                         .queryParam(FILE_NAME_QUERY_PARAM, FILE_NAME))
                 .andExpect(status().isOk())
                 .andDo(print());
@@ -261,15 +336,66 @@ class UserFilesControllerWithUserIT {
                 org.mockito.ArgumentMatchers.any(InputStream.class));
     }
 
+    @Test
+    @DisplayName("POST /file ошибка. Часть hash после части file 400")
+    public void uploadFile_hash_after_file_error() throws Exception {
+        String path = "/file";
+        HttpEntity httpEntity = MultipartEntityBuilder.create()
+                .addBinaryBody("file", TEST_BYTES_ARRAY)
+                .addTextBody("hash", "123456abcdef")
+                .build();
+        doAnswer(invocation -> invocation.getArgument(3, InputStream.class).readAllBytes())
+                .when(userFilesService).saveFile(any(), any(), any(), any());
+
+        mockMvc.perform(multipartPost(path, httpEntity)
+                        .queryParam(FILE_NAME_QUERY_PARAM, FILE_NAME))
+                .andExpect(status().isBadRequest())
+                .andDo(print());
+    }
+
+    @Test
+    @DisplayName("POST /file пустая часть hash после части file допускается")
+    public void uploadFile_empty_hash_after_file_success() throws Exception {
+        String path = "/file";
+        HttpEntity httpEntity = MultipartEntityBuilder.create()
+                .addBinaryBody("file", TEST_BYTES_ARRAY)
+                .addTextBody("hash", "")
+                .build();
+        doAnswer(invocation -> invocation.getArgument(3, InputStream.class).readAllBytes())
+                .when(userFilesService).saveFile(any(), any(), any(), any());
+
+        mockMvc.perform(multipartPost(path, httpEntity)
+                        .queryParam(FILE_NAME_QUERY_PARAM, FILE_NAME))
+                .andExpect(status().isOk())
+                .andDo(print());
+    }
+
+    @Test
+    @DisplayName("POST /file ошибка. Слишком длинная часть hash 400")
+    public void uploadFile_streaming_hash_too_long_error() throws Exception {
+        String path = "/file";
+        HttpEntity httpEntity = MultipartEntityBuilder.create()
+                .addTextBody("hash", "a".repeat(100_000))
+                .addBinaryBody("file", TEST_BYTES_ARRAY)
+                .build();
+
+        mockMvc.perform(multipartPost(path, httpEntity)
+                        .queryParam(FILE_NAME_QUERY_PARAM, FILE_NAME))
+                .andExpect(status().isBadRequest())
+                .andDo(print());
+
+        verify(userFilesService, never()).saveFile(any(), any(), any(), any());
+    }
+
     @Test
     @DisplayName("POST /file ошибка параметра запроса filename 400")
     public void uploadFile_bad_filename_error() throws Exception {
         String path = "/file";
-        MockMultipartFile multipartFile = new MockMultipartFile(
-                "file", FILE_NAME, APPLICATION_OCTET_STREAM_VALUE, TEST_BYTES_ARRAY);
+        HttpEntity httpEntity = MultipartEntityBuilder.create()
+                .addBinaryBody("file", TEST_BYTES_ARRAY)
+                .build();
 
-        mockMvc.perform(multipart(path)
-                        .file(multipartFile)
+        mockMvc.perform(multipartPost(path, httpEntity)
                         .queryParam(FILE_NAME_QUERY_PARAM, BAD_FILE_NAME))
                 .andExpect(status().isBadRequest())
                 .andDo(print());
@@ -281,15 +407,23 @@ class UserFilesControllerWithUserIT {
     @DisplayName("POST /file ошибка параметра объекта file 400")
     public void uploadFile_file_part_not_found_error() throws Exception {
         String path = "/file";
-        MockMultipartFile multipartFile = new MockMultipartFile(
-                "wrong_file_part_name", FILE_NAME, APPLICATION_OCTET_STREAM_VALUE, TEST_BYTES_ARRAY);
+        HttpEntity httpEntity = MultipartEntityBuilder.create()
+                .addBinaryBody("wrong_file_part_name", TEST_BYTES_ARRAY)
+                .build();
 
-        mockMvc.perform(multipart(path)
-                        .file(multipartFile)
+        mockMvc.perform(multipartPost(path, httpEntity)
                         .queryParam(FILE_NAME_QUERY_PARAM, FILE_NAME))
                 .andExpect(status().isBadRequest())
                 .andDo(print());
 
         verifyNoInteractions(userFilesService);
     }
-}
\ No newline at end of file
+
+    private static MockHttpServletRequestBuilder multipartPost(String path, HttpEntity httpEntity) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        httpEntity.writeTo(body);
+        return post(path)
+                .contentType(httpEntity.getContentType().getValue())
+                .content(body.toByteArray());
+    }
+}
@@ -3,15 +3,27 @@ package ru.netology.cloudservice.converter;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.netology.cloudservice.model.dto.DeflatedContentDto;
 import ru.netology.cloudservice.model.dto.FileContentDto;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
@@ -42,6 +54,233 @@ class FileContentDtoResponseEntityConverterTest {
         inspectHttpEntity(resultEntity);
     }
 
+    @Test
+    @DisplayName("from(Resource,hash) файл передается с известной длиной")
+    void from_file_resource_success(@TempDir Path tempDir) throws IOException {
+        var contentFile = Files.write(tempDir.resolve("content"), TEST_CONTENT.getBytes());
+        var resultEntity = sut.from(new FileSystemResource(contentFile), TEST_HASH);
+        var outputStream = new ByteArrayOutputStream();
+        resultEntity.getBody().writeTo(outputStream);
+        assertThat(resultEntity.getHeaders().getContentLength(), is((long) outputStream.size()));
+        inspectHttpEntity(resultEntity);
+    }
+
+    @Test
+    @DisplayName("from() If-None-Match с совпадающим ETag возвращает 304")
+    void from_if_none_match_not_modified() throws IOException {
+        var requestHeaders = new HttpHeaders();
+        requestHeaders.setIfNoneMatch("\"" + TEST_HASH + "\"");
+        var resultEntity = sut.from(new FileContentDto(new ByteArrayInputStream(TEST_CONTENT.getBytes()), TEST_HASH),
+                requestHeaders);
+        assertThat(resultEntity.getStatusCode(), is(HttpStatus.NOT_MODIFIED));
+        assertThat(resultEntity.getBody(), nullValue());
+    }
+
+    @Test
+    @DisplayName("from() Range возвращает 206 с частью ответа")
+    void from_single_range_partial_content(@TempDir Path tempDir) throws IOException {
+        var resource = new FileSystemResource(Files.write(tempDir.resolve("content"), TEST_CONTENT.getBytes()));
+        var fullBody = writeBody(sut.from(resource, TEST_HASH, HttpHeaders.EMPTY));
+        var requestHeaders = new HttpHeaders();
+        requestHeaders.setRange(List.of(HttpRange.createByteRange(10, 29)));
+
+        var resultEntity = sut.from(resource, TEST_HASH, requestHeaders);
+
+        assertThat(resultEntity.getStatusCode(), is(HttpStatus.PARTIAL_CONTENT));
+        assertThat(resultEntity.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE),
+                equalTo("bytes 10-29/" + fullBody.length()));
+        assertThat(writeBody(resultEntity), equalTo(fullBody.substring(10, 30)));
+    }
+
+    @Test
+    @DisplayName("from() Range содержимого не из файла с известной длиной возвращает 206")
+    void from_single_range_stream_resource_partial_content(@TempDir Path tempDir) throws IOException {
+        var fileResource = new FileSystemResource(Files.write(tempDir.resolve("content"), TEST_CONTENT.getBytes()));
+        var fullBody = writeBody(sut.from(fileResource, TEST_HASH, HttpHeaders.EMPTY));
+        var resource = new ByteArrayResource(TEST_CONTENT.getBytes()) {
+            @Override
+            public boolean isFile() {
+                return false;
+            }
+        };
+        var requestHeaders = new HttpHeaders();
+        requestHeaders.setRange(List.of(HttpRange.createByteRange(10, 29)));
+
+        var fullEntity = sut.from(resource, TEST_HASH, HttpHeaders.EMPTY);
+        var resultEntity = sut.from(resource, TEST_HASH, requestHeaders);
+
+        assertThat(fullEntity.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES), equalTo("bytes"));
+        assertThat(fullEntity.getHeaders().getContentLength(), is((long) fullBody.length()));
+        assertThat(resultEntity.getStatusCode(), is(HttpStatus.PARTIAL_CONTENT));
+        assertThat(resultEntity.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE),
+                equalTo("bytes 10-29/" + fullBody.length()));
+        assertThat(writeBody(resultEntity), equalTo(fullBody.substring(10, 30)));
+    }
+
+    @Test
+    @DisplayName("from() несколько Range возвращают multipart/byteranges")
+    void from_multiple_ranges_partial_content(@TempDir Path tempDir) throws IOException {
+        var resource = new FileSystemResource(Files.write(tempDir.resolve("content"), TEST_CONTENT.getBytes()));
+        var fullBody = writeBody(sut.from(resource, TEST_HASH, HttpHeaders.EMPTY));
+        var requestHeaders = new HttpHeaders();
+        requestHeaders.setRange(List.of(HttpRange.createByteRange(0, 4), HttpRange.createSuffixRange(5)));
+
+        var resultEntity = sut.from(resource, TEST_HASH, requestHeaders);
+        var actualBody = writeBody(resultEntity);
+
+        assertThat(resultEntity.getStatusCode(), is(HttpStatus.PARTIAL_CONTENT));
+        assertThat(resultEntity.getHeaders().getContentType().toString(), startsWith("multipart/byteranges"));
+        assertThat(resultEntity.getHeaders().getContentLength(), is((long) actualBody.length()));
+        assertThat(actualBody, containsString(fullBody.substring(0, 5)));
+        assertThat(actualBody, containsString(fullBody.substring(fullBody.length() - 5)));
+    }
+
+    @Test
+    @DisplayName("from() Range за пределами ответа возвращает 416")
+    void from_range_not_satisfiable(@TempDir Path tempDir) throws IOException {
+        var resource = new FileSystemResource(Files.write(tempDir.resolve("content"), TEST_CONTENT.getBytes()));
+        var requestHeaders = new HttpHeaders();
+        requestHeaders.setRange(List.of(HttpRange.createByteRange(100_000)));
+        var resultEntity = sut.from(resource, TEST_HASH, requestHeaders);
+        assertThat(resultEntity.getStatusCode(), is(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE));
+    }
+
+    @Test
+    @DisplayName("from() неудовлетворимые Range пропускаются, если есть удовлетворимые")
+    void from_partially_satisfiable_ranges(@TempDir Path tempDir) throws IOException {
+        var resource = new FileSystemResource(Files.write(tempDir.resolve("content"), TEST_CONTENT.getBytes()));
+        var fullBody = writeBody(sut.from(resource, TEST_HASH, HttpHeaders.EMPTY));
+        var requestHeaders = new HttpHeaders();
+        requestHeaders.setRange(List.of(HttpRange.createByteRange(100_000), HttpRange.createByteRange(10, 29)));
+
+        var resultEntity = sut.from(resource, TEST_HASH, requestHeaders);
+
+        assertThat(resultEntity.getStatusCode(), is(HttpStatus.PARTIAL_CONTENT));
+        assertThat(writeBody(resultEntity), equalTo(fullBody.substring(10, 30)));
+    }
+
+    @Test
+    @DisplayName("from() пересекающиеся Range объединяются")
+    void from_overlapping_ranges_coalesced(@TempDir Path tempDir) throws IOException {
+        var resource = new FileSystemResource(Files.write(tempDir.resolve("content"), TEST_CONTENT.getBytes()));
+        var fullBody = writeBody(sut.from(resource, TEST_HASH, HttpHeaders.EMPTY));
+        var requestHeaders = new HttpHeaders();
+        requestHeaders.setRange(List.of(HttpRange.createByteRange(20, 29), HttpRange.createByteRange(10, 24)));
+
+        var resultEntity = sut.from(resource, TEST_HASH, requestHeaders);
+
+        assertThat(resultEntity.getStatusCode(), is(HttpStatus.PARTIAL_CONTENT));
+        assertThat(resultEntity.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE),
+                equalTo("bytes 10-29/" + fullBody.length()));
+        assertThat(writeBody(resultEntity), equalTo(fullBody.substring(10, 30)));
+    }
+
+    @Test
+    @DisplayName("from() Range больше самого ответа возвращают весь ответ")
+    void from_excessive_ranges_full_content(@TempDir Path tempDir) throws IOException {
+        var resource = new FileSystemResource(Files.write(tempDir.resolve("content"), TEST_CONTENT.getBytes()));
+        var requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.RANGE, "bytes=0-,0-,0-");
+
+        var resultEntity = sut.from(resource, TEST_HASH, requestHeaders);
+
+        inspectHttpEntity(resultEntity);
+    }
+
+    @Test
+    @DisplayName("from() If-Range с другим ETag возвращает весь ответ")
+    void from_if_range_mismatch_full_content(@TempDir Path tempDir) throws IOException {
+        var resource = new FileSystemResource(Files.write(tempDir.resolve("content"), TEST_CONTENT.getBytes()));
+        var requestHeaders = new HttpHeaders();
+        requestHeaders.setRange(List.of(HttpRange.createByteRange(10, 29)));
+        requestHeaders.set(HttpHeaders.IF_RANGE, "\"other_hash\"");
+        var resultEntity = sut.from(resource, TEST_HASH, requestHeaders);
+        inspectHttpEntity(resultEntity);
+    }
+
+    @Test
+    @DisplayName("from() сжатое содержимое передается с Content-Encoding: deflate без пересжатия")
+    void from_deflated_content_encoding(@TempDir Path tempDir) throws IOException {
+        var resource = new FileSystemResource(Files.write(tempDir.resolve("content"), TEST_CONTENT.getBytes()));
+        var identityBody = writeBody(sut.from(resource, TEST_HASH, HttpHeaders.EMPTY));
+        var requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate;q=0.5");
+
+        var resultEntity = sut.from(new FileContentDto(resource, TEST_HASH, deflate(TEST_CONTENT.getBytes())),
+                requestHeaders);
+        var outputStream = new ByteArrayOutputStream();
+        resultEntity.getBody().writeTo(outputStream);
+
+        assertThat(resultEntity.getStatusCode(), is(HttpStatus.OK));
+        assertThat(resultEntity.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING), equalTo("deflate"));
+        assertThat(resultEntity.getHeaders().getVary(), contains(HttpHeaders.ACCEPT_ENCODING));
+        assertThat(resultEntity.getHeaders().getContentLength(), is((long) outputStream.size()));
+        try (var inputStream = new InflaterInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            assertThat(new String(inputStream.readAllBytes()), equalTo(identityBody));
+        }
+    }
+
+    @Test
+    @DisplayName("from() сжатое содержимое без Accept-Encoding передается распакованным")
+    void from_deflated_identity_without_accept_encoding(@TempDir Path tempDir) throws IOException {
+        var resource = new FileSystemResource(Files.write(tempDir.resolve("content"), TEST_CONTENT.getBytes()));
+        var requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate;q=0");
+
+        var resultEntity = sut.from(new FileContentDto(resource, TEST_HASH, deflate(TEST_CONTENT.getBytes())),
+                requestHeaders);
+
+        assertThat(resultEntity.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING), nullValue());
+        assertThat(resultEntity.getHeaders().getVary(), contains(HttpHeaders.ACCEPT_ENCODING));
+        inspectHttpEntity(resultEntity);
+    }
+
+    @Test
+    @DisplayName("from() Range сжатого содержимого возвращает часть распакованного ответа")
+    void from_deflated_range_partial_content(@TempDir Path tempDir) throws IOException {
+        var resource = new FileSystemResource(Files.write(tempDir.resolve("content"), TEST_CONTENT.getBytes()));
+        var fullBody = writeBody(sut.from(resource, TEST_HASH, HttpHeaders.EMPTY));
+        var inflatedResource = new ByteArrayResource(TEST_CONTENT.getBytes()) {
+            @Override
+            public boolean isFile() {
+                return false;
+            }
+        };
+        var requestHeaders = new HttpHeaders();
+        requestHeaders.set(HttpHeaders.ACCEPT_ENCODING, "deflate");
+        requestHeaders.setRange(List.of(HttpRange.createSuffixRange(10)));
+
+        var resultEntity = sut.from(
+                new FileContentDto(inflatedResource, TEST_HASH, deflate(TEST_CONTENT.getBytes())), requestHeaders);
+
+        assertThat(resultEntity.getStatusCode(), is(HttpStatus.PARTIAL_CONTENT));
+        assertThat(resultEntity.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING), nullValue());
+        assertThat(writeBody(resultEntity), equalTo(fullBody.substring(fullBody.length() - 10)));
+    }
+
+    private static DeflatedContentDto deflate(byte[] content) {
+        var deflater = new Deflater(Deflater.BEST_SPEED, true);
+        deflater.setInput(content);
+        var buffer = new byte[1024];
+        var blocks = new ByteArrayOutputStream();
+        int length;
+        do {
+            length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+            blocks.write(buffer, 0, length);
+        } while (length == buffer.length);
+        deflater.end();
+        var adler32 = new Adler32();
+        adler32.update(content);
+        return new DeflatedContentDto(
+                new ByteArrayResource(blocks.toByteArray()), content.length, (int) adler32.getValue());
+    }
+
+    private String writeBody(ResponseEntity<StreamingResponseBody> resultEntity) throws IOException {
+        var outputStream = new ByteArrayOutputStream();
+        resultEntity.getBody().writeTo(outputStream);
+        return outputStream.toString();
+    }
+
     private void inspectHttpEntity(ResponseEntity<StreamingResponseBody> resultEntity) throws IOException {
         var contentType = resultEntity.getHeaders().getContentType();
         var outputStream = new ByteArrayOutputStream();
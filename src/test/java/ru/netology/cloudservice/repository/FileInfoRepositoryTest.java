@@ -7,25 +7,31 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import ru.netology.cloudservice.entity.FileInfo;
 import ru.netology.cloudservice.entity.UserEntity;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import static java.time.Instant.now;
 import static java.util.function.Predicate.not;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 import static org.instancio.Select.field;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @DataJpaTest
 class FileInfoRepositoryTest {
     private static final String TEST_USER_NAME = "test_user";
     private static final String FIRST_FILE_NAME = "testfile1.dat";
     private static final String SECOND_FILE_NAME = "testfile2.dat";
-    private static final int FIRST_FILE_EXIST_COUNT = 2;
+    private static final int FIRST_FILE_EXIST_COUNT = 1;
     private static final int FIRST_FILE_DELETED_COUNT = 2;
     private static final int SECOND_FILE_EXIST_COUNT = 1;
     private static final int EXIST_FILE_LIST_SIZE = FIRST_FILE_EXIST_COUNT + SECOND_FILE_EXIST_COUNT;
@@ -37,9 +43,15 @@ class FileInfoRepositoryTest {
     @Autowired
     private FileInfoRepository sut;
 
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    private long testUserId;
+
     @BeforeEach
     void setUp() {
         UserEntity testUser = userRepository.save(new UserEntity(0, TEST_USER_NAME, "{noop}123", true, Set.of("ROLE_USER")));
+        testUserId = testUser.getId();
         sut.saveAll(Instancio.ofList(FileInfo.class)
                 .size(FIRST_FILE_EXIST_COUNT)
                 .set(field(FileInfo::getFilename), FIRST_FILE_NAME)
@@ -78,7 +90,7 @@ class FileInfoRepositoryTest {
     @Test
     @DisplayName("Получение списка существующих версий одного файла по имени")
     void find_exist_file_list_by_filename_success() {
-        var resultList = sut.findAllByOwnerUsernameAndFilenameAndDeletedAtIsNull(TEST_USER_NAME, FIRST_FILE_NAME);
+        var resultList = sut.findAllByOwnerIdAndFilenameAndDeletedAtIsNull(testUserId, FIRST_FILE_NAME);
         assertThat(resultList, hasSize(FIRST_FILE_EXIST_COUNT));
         resultList.forEach(fileInfo -> {
             assertThat(fileInfo.getFilename(), equalTo(FIRST_FILE_NAME));
@@ -90,7 +102,7 @@ class FileInfoRepositoryTest {
     @Test
     @DisplayName("Получение существующего файла по имени")
     void find_exist_file_by_filename_success() {
-        var fileInfo = sut.findFirstByOwnerUsernameAndFilenameAndDeletedAtIsNull(TEST_USER_NAME, FIRST_FILE_NAME)
+        var fileInfo = sut.findFirstByOwnerIdAndFilenameAndDeletedAtIsNull(testUserId, FIRST_FILE_NAME)
                 .orElseThrow();
         assertThat(fileInfo.getFilename(), equalTo(FIRST_FILE_NAME));
         assertThat(fileInfo.getOwner().getUsername(), equalTo(TEST_USER_NAME));
@@ -101,7 +113,7 @@ class FileInfoRepositoryTest {
     @DisplayName("Получение списка всех существующих и удаленных файлов")
     void find_all_exist_files_and_deleted_files_success() {
         var expectedResultListSize = EXIST_FILE_LIST_SIZE + DELETED_FILE_LIST_SIZE;
-        var resultList = sut.findAllByOwnerUsername(TEST_USER_NAME);
+        var resultList = sut.findAllByOwnerId(testUserId);
         assertThat(resultList, hasSize(expectedResultListSize));
         assertThat(countMatches(resultList, FileInfo::isDeleted), is(DELETED_FILE_LIST_SIZE));
         assertThat(countMatches(resultList, not(FileInfo::isDeleted)), is(EXIST_FILE_LIST_SIZE));
@@ -110,14 +122,83 @@ class FileInfoRepositoryTest {
         });
     }
 
+    @Test
+    @DisplayName("Постраничное получение существующих файлов по курсору")
+    void find_exist_files_page_success() {
+        var firstPage = sut.findPage(testUserId, PageRequest.ofSize(1));
+        var lastOfFirstPage = firstPage.get(firstPage.size() - 1);
+        var secondPage = sut.findPageAfter(testUserId, lastOfFirstPage.getFilename(), lastOfFirstPage.getId(),
+                PageRequest.ofSize(1));
+        assertThat(firstPage, hasSize(1));
+        assertThat(secondPage, hasSize(EXIST_FILE_LIST_SIZE - 1));
+        assertThat(firstPage.get(0).getFilename(), equalTo(FIRST_FILE_NAME));
+        assertThat(secondPage.get(0).getFilename(), equalTo(SECOND_FILE_NAME));
+    }
+
+    @Test
+    @DisplayName("Получение существующего файла по имени без загрузки сущности")
+    void find_exist_file_projection_by_filename_success() {
+        var fileInfo = sut.findProjectionByOwnerIdAndFilenameAndDeletedAtIsNull(testUserId, SECOND_FILE_NAME)
+                .orElseThrow();
+        assertThat(fileInfo.getFilename(), equalTo(SECOND_FILE_NAME));
+        assertThat(fileInfo.getHash(), notNullValue());
+    }
+
+    @Test
+    @DisplayName("Ошибка. Второй существующий файл с тем же именем")
+    void save_second_exist_file_with_same_filename_failure() {
+        var duplicate = Instancio.of(FileInfo.class)
+                .set(field(FileInfo::getId), 0L)
+                .set(field(FileInfo::getFilename), SECOND_FILE_NAME)
+                .set(field(FileInfo::getOwner), userRepository.getReferenceById(testUserId))
+                .set(field(FileInfo::getCreatedAt), now())
+                .set(field(FileInfo::getDeletedAt), null)
+                .create();
+        var exception = assertThrows(DataIntegrityViolationException.class, () -> sut.saveAndFlush(duplicate));
+        assertThat(FileInfoRepository.isLiveFilenameConflict(exception), is(true));
+        testEntityManager.clear();
+    }
+
     @Test
     @DisplayName("Получение списка всех существующих файлов")
     void find_exist_files_success() {
-        var resultList = sut.findAllByOwnerUsernameAndDeletedAtIsNull(TEST_USER_NAME);
+        var resultList = sut.findAllByOwnerIdAndDeletedAtIsNull(testUserId);
         assertThat(resultList, hasSize(EXIST_FILE_LIST_SIZE));
         resultList.forEach(fileInfo -> {
             assertThat(fileInfo.getOwner().getUsername(), equalTo(TEST_USER_NAME));
             assertThat(fileInfo.isDeleted(), is(false));
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Получение удалённых до заданного момента файлов по порядку id")
+    void findDeletedBefore_success() {
+        var resultList = sut.findDeletedBefore(now().plusSeconds(60), 0, PageRequest.of(0, DELETED_FILE_LIST_SIZE));
+        assertThat(resultList, hasSize(DELETED_FILE_LIST_SIZE));
+        assertThat(resultList.get(0).getId(), lessThan(resultList.get(1).getId()));
+
+        var nextList = sut.findDeletedBefore(now().plusSeconds(60), resultList.get(0).getId(), PageRequest.of(0, 10));
+        assertThat(nextList, hasSize(DELETED_FILE_LIST_SIZE - 1));
+        assertThat(sut.findDeletedBefore(now(), 0, PageRequest.of(0, 10)), empty());
+    }
+
+    @Test
+    @DisplayName("Поиск существующих идентификаторов содержимого")
+    void findExistingContentUids_success() {
+        var existingUid = sut.findAllByOwnerIdAndDeletedAtIsNull(testUserId).get(0).getContentUid();
+        var resultList = sut.findExistingContentUids(List.of(existingUid, "missing_content_uid"));
+        assertThat(resultList, contains(existingUid));
+    }
+
+    @Test
+    @DisplayName("Пометка файлов удалёнными")
+    void markDeleted_success() {
+        var existIds = sut.findAllByOwnerIdAndDeletedAtIsNull(testUserId).stream()
+                .map(FileInfo::getId)
+                .collect(Collectors.toList());
+        var updatedCount = sut.markDeleted(existIds, now());
+        assertThat(updatedCount, is(EXIST_FILE_LIST_SIZE));
+        assertThat(sut.findAllByOwnerIdAndDeletedAtIsNull(testUserId), empty());
+        assertThat(sut.findLiveAfter(0, PageRequest.of(0, 10)), empty());
+    }
+}
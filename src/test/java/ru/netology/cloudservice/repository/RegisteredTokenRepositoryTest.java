@@ -5,16 +5,20 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
 import ru.netology.cloudservice.entity.RegisteredToken;
+import ru.netology.cloudservice.util.TokenDigest;
 
 import java.time.Instant;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 
 @DataJpaTest
 class RegisteredTokenRepositoryTest {
-    private static final String TEST_TOKEN = "testtokenvalue";
+    private static final String TEST_TOKEN_DIGEST = TokenDigest.of("testtokenvalue");
     private static final String TEST_LOGIN = "testlogin";
     private static final Instant TEST_ISSUED_AT = Instant.now();
     private static final Instant TEST_EXPIRES_AT = Instant.now().plusSeconds(60);
@@ -27,21 +31,29 @@ class RegisteredTokenRepositoryTest {
     @BeforeEach
     void setUp() {
         tokenEntity = sut.save(
-                new RegisteredToken(TEST_TOKEN, TEST_LOGIN, TEST_ISSUED_AT, TEST_EXPIRES_AT)
+                new RegisteredToken(TEST_TOKEN_DIGEST, TEST_LOGIN, TEST_ISSUED_AT, TEST_EXPIRES_AT)
         );
     }
 
     @AfterEach
     void tearDown() {
-        sut.deleteById(tokenEntity.getToken());
+        sut.deleteById(tokenEntity.getTokenDigest());
     }
 
     @Test
-    void findFirstByLoginAndToken() {
-        var resultEntity = sut.findFirstByLoginAndToken(TEST_LOGIN, TEST_TOKEN).orElseThrow();
-        assertThat(resultEntity.getToken(), equalTo(TEST_TOKEN));
+    void findFirstByLoginAndTokenDigest() {
+        var resultEntity = sut.findFirstByLoginAndTokenDigest(TEST_LOGIN, TEST_TOKEN_DIGEST).orElseThrow();
+        assertThat(resultEntity.getTokenDigest(), equalTo(TEST_TOKEN_DIGEST));
         assertThat(resultEntity.getLogin(), equalTo(TEST_LOGIN));
         assertThat(resultEntity.getIssuedAt(), equalTo(TEST_ISSUED_AT));
         assertThat(resultEntity.getExpiresAt(), equalTo(TEST_EXPIRES_AT));
     }
-}
\ No newline at end of file
+
+    @Test
+    void findExpiredTokens() {
+        var notExpired = sut.findExpiredTokens(TEST_EXPIRES_AT.minusSeconds(1), PageRequest.of(0, 10));
+        var expired = sut.findExpiredTokens(TEST_EXPIRES_AT.plusSeconds(1), PageRequest.of(0, 10));
+        assertThat(notExpired, empty());
+        assertThat(expired, contains(TEST_TOKEN_DIGEST));
+    }
+}
@@ -16,6 +16,7 @@ import static org.hamcrest.Matchers.is;
 class UserRepositoryTest {
     private static final String TEST_USER_NAME = "test_user";
     private static final String TEST_USER_PASSWORD = "{noop}123";
+    private static final String TEST_UPDATED_PASSWORD = "{noop}456";
     private static final boolean TEST_USER_ENABLED = true;
     private static final Set<String> TEST_USER_AUTHORITIES = Set.of("ROLE_USER", "TEST_READ", "TEST_WRITE");
 
@@ -49,4 +50,11 @@ class UserRepositoryTest {
         var resultEntity = sut.findIdByUsername(TEST_USER_NAME).orElseThrow();
         assertThat(resultEntity, is(userEntity.getId()));
     }
-}
\ No newline at end of file
+
+    @Test
+    void updatePassword_success() {
+        var updatedCount = sut.updatePassword(TEST_USER_NAME, TEST_UPDATED_PASSWORD);
+        assertThat(updatedCount, is(1));
+        assertThat(sut.findById(userEntity.getId()).orElseThrow().getPassword(), is(TEST_UPDATED_PASSWORD));
+    }
+}
@@ -0,0 +1,41 @@
+package ru.netology.cloudservice.service.impl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class BCryptCostPasswordEncoderTest {
+    private static final String TEST_PASSWORD = "TEST_PASSWORD";
+    private static final int TEST_STRENGTH = 5;
+
+    private final BCryptCostPasswordEncoder sut = new BCryptCostPasswordEncoder(TEST_STRENGTH);
+
+    @Test
+    @DisplayName("upgradeEncoding() хэш с меньшей стоимостью требует обновления")
+    void upgradeEncoding_lower_strength_success() {
+        assertThat(sut.upgradeEncoding(new BCryptPasswordEncoder(TEST_STRENGTH - 1).encode(TEST_PASSWORD)), is(true));
+    }
+
+    @Test
+    @DisplayName("upgradeEncoding() хэш с большей стоимостью требует обновления")
+    void upgradeEncoding_higher_strength_success() {
+        assertThat(sut.upgradeEncoding(new BCryptPasswordEncoder(TEST_STRENGTH + 1).encode(TEST_PASSWORD)), is(true));
+    }
+
+    @Test
+    @DisplayName("upgradeEncoding() хэш с той же стоимостью не требует обновления")
+    void upgradeEncoding_same_strength_success() {
+        assertThat(sut.upgradeEncoding(sut.encode(TEST_PASSWORD)), is(false));
+    }
+
+    @Test
+    @DisplayName("calibrateStrength() не опускается ниже минимальной стоимости")
+    void calibrateStrength_min_strength_success() {
+        assertThat(BCryptCostPasswordEncoder.calibrateStrength(Duration.ofNanos(1), 10), is(10));
+    }
+}
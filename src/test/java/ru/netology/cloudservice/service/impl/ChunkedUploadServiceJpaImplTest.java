@@ -0,0 +1,305 @@
+package ru.netology.cloudservice.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.support.TransactionOperations;
+import ru.netology.cloudservice.entity.UploadSession;
+import ru.netology.cloudservice.model.request.UploadSessionRequest;
+import ru.netology.cloudservice.repository.UploadSessionRepository;
+import ru.netology.cloudservice.repository.UserRepository;
+import ru.netology.cloudservice.service.FileContentStorage;
+import ru.netology.cloudservice.service.UserFilesService;
+import ru.netology.cloudservice.service.UserIdResolver;
+
+import javax.validation.ValidationException;
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChunkedUploadServiceJpaImplTest {
+    private static final long TEST_USER_ID = 1L;
+    private static final String TEST_USER_NAME = "test_user";
+    private static final String TEST_FILE_NAME = "test_file.dat";
+    private static final String TEST_FILE_HASH = "1234";
+    private static final String TEST_UPLOAD_ID = "test_upload_id";
+    private static final long TEST_CHUNK_SIZE = 4;
+    private static final long TEST_MAX_CHUNK_SIZE = 1024;
+    private static final long TEST_MAX_SIZE = 1024 * 1024;
+    private static final Duration TEST_SESSION_TTL = Duration.ofDays(1);
+    private static final byte[] TEST_FILE_CONTENT = "test_file_content".getBytes();
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private UserIdResolver userIdResolver;
+
+    @Mock
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Mock
+    private UserFilesService userFilesService;
+
+    @Mock
+    private FileContentStorage fileContentStorage;
+
+    private ChunkedUploadServiceJpaImpl sut;
+
+    @BeforeEach
+    void setUp() {
+        sut = new ChunkedUploadServiceJpaImpl(userRepository, userIdResolver, uploadSessionRepository,
+                userFilesService, fileContentStorage, TransactionOperations.withoutTransaction(),
+                TEST_MAX_CHUNK_SIZE, TEST_MAX_SIZE, TEST_SESSION_TTL);
+        lenient().when(userIdResolver.resolve(TEST_USER_NAME)).thenReturn(TEST_USER_ID);
+    }
+
+    private UploadSession createUploadSession(Set<Integer> receivedChunks) {
+        return new UploadSession(TEST_UPLOAD_ID, null, TEST_FILE_NAME, TEST_FILE_CONTENT.length,
+                TEST_CHUNK_SIZE, TEST_FILE_HASH, Instant.now(), new HashSet<>(receivedChunks), false);
+    }
+
+    @Test
+    @DisplayName("createSession() успешное создание сессии загрузки")
+    void createSession_success() throws IOException {
+        when(uploadSessionRepository.save(any(UploadSession.class))).then(invocation -> invocation.getArgument(0));
+
+        var result = sut.createSession(TEST_USER_NAME, TEST_FILE_NAME,
+                new UploadSessionRequest(TEST_FILE_CONTENT.length, TEST_CHUNK_SIZE, TEST_FILE_HASH));
+
+        assertThat(result.getUploadId(), not(blankOrNullString()));
+        assertThat(result.getChunksCount(), is(5));
+        assertThat(result.getReceivedChunks(), empty());
+        verify(fileContentStorage).write(eq(result.getUploadId()), eq(0L), any(InputStream.class));
+    }
+
+    @Test
+    @DisplayName("createSession() ошибка. Слишком большой размер части")
+    void createSession_chunk_size_too_large_failure() {
+        assertThrows(ValidationException.class, () -> sut.createSession(TEST_USER_NAME, TEST_FILE_NAME,
+                new UploadSessionRequest(TEST_FILE_CONTENT.length, TEST_MAX_CHUNK_SIZE + 1, TEST_FILE_HASH)));
+    }
+
+    @Test
+    @DisplayName("createSession() ошибка. Слишком большой размер файла")
+    void createSession_size_too_large_failure() {
+        assertThrows(ValidationException.class, () -> sut.createSession(TEST_USER_NAME, TEST_FILE_NAME,
+                new UploadSessionRequest(TEST_MAX_SIZE + 1, TEST_MAX_CHUNK_SIZE, TEST_FILE_HASH)));
+    }
+
+    @Test
+    @DisplayName("createSession() ошибка. Слишком много частей")
+    void createSession_too_many_chunks_failure() {
+        assertThrows(ValidationException.class, () -> sut.createSession(TEST_USER_NAME, TEST_FILE_NAME,
+                new UploadSessionRequest(ChunkedUploadServiceJpaImpl.MAX_CHUNKS_COUNT + 1, 1, TEST_FILE_HASH)));
+    }
+
+    @Test
+    @DisplayName("writeChunk() ошибка. Сессия не найдена")
+    void writeChunk_not_found_failure() {
+        assertThrows(FileNotFoundException.class, () -> sut.writeChunk(TEST_USER_NAME, TEST_UPLOAD_ID, 0,
+                new ByteArrayInputStream(TEST_FILE_CONTENT)));
+    }
+
+    @Test
+    @DisplayName("writeChunk() успешная запись последней части")
+    void writeChunk_last_chunk_success() throws IOException {
+        var lockedUploadSession = createUploadSession(Set.of());
+        when(uploadSessionRepository.findByIdAndOwnerId(TEST_UPLOAD_ID, TEST_USER_ID))
+                .thenReturn(Optional.of(createUploadSession(Set.of())));
+        when(uploadSessionRepository.findForUpdate(TEST_UPLOAD_ID, TEST_USER_ID))
+                .thenReturn(Optional.of(lockedUploadSession));
+        when(fileContentStorage.write(eq(TEST_UPLOAD_ID), eq(16L), any(InputStream.class)))
+                .then(invocation -> (long) invocation.<InputStream>getArgument(2).readAllBytes().length);
+
+        sut.writeChunk(TEST_USER_NAME, TEST_UPLOAD_ID, 4, new ByteArrayInputStream(new byte[1]));
+
+        assertThat(lockedUploadSession.getReceivedChunks(), contains(4));
+    }
+
+    @Test
+    @DisplayName("writeChunk() ошибка. Сессия удалена во время записи")
+    void writeChunk_session_removed_failure() throws IOException {
+        when(uploadSessionRepository.findByIdAndOwnerId(TEST_UPLOAD_ID, TEST_USER_ID))
+                .thenReturn(Optional.of(createUploadSession(Set.of())));
+        when(fileContentStorage.write(eq(TEST_UPLOAD_ID), eq(16L), any(InputStream.class)))
+                .then(invocation -> (long) invocation.<InputStream>getArgument(2).readAllBytes().length);
+
+        assertThrows(FileNotFoundException.class, () -> sut.writeChunk(TEST_USER_NAME, TEST_UPLOAD_ID, 4,
+                new ByteArrayInputStream(new byte[1])));
+    }
+
+    @Test
+    @DisplayName("writeChunk() ошибка. Неверная длина части")
+    void writeChunk_wrong_length_failure() throws IOException {
+        when(uploadSessionRepository.findByIdAndOwnerId(TEST_UPLOAD_ID, TEST_USER_ID))
+                .thenReturn(Optional.of(createUploadSession(Set.of())));
+        when(fileContentStorage.write(eq(TEST_UPLOAD_ID), anyLong(), any(InputStream.class)))
+                .then(invocation -> (long) invocation.<InputStream>getArgument(2).readAllBytes().length);
+
+        assertThrows(ValidationException.class, () -> sut.writeChunk(TEST_USER_NAME, TEST_UPLOAD_ID, 0,
+                new ByteArrayInputStream(new byte[1])));
+    }
+
+    @Test
+    @DisplayName("writeChunk() уже полученная часть не записывается повторно")
+    void writeChunk_received_chunk_skipped() throws IOException {
+        when(uploadSessionRepository.findByIdAndOwnerId(TEST_UPLOAD_ID, TEST_USER_ID))
+                .thenReturn(Optional.of(createUploadSession(Set.of(4))));
+
+        sut.writeChunk(TEST_USER_NAME, TEST_UPLOAD_ID, 4, new ByteArrayInputStream(new byte[1]));
+
+        verify(fileContentStorage, never()).write(anyString(), anyLong(), any(InputStream.class));
+    }
+
+    @Test
+    @DisplayName("writeChunk() ошибка. Сессия уже фиксируется")
+    void writeChunk_committing_failure() throws IOException {
+        var uploadSession = createUploadSession(Set.of());
+        uploadSession.setCommitting(true);
+        when(uploadSessionRepository.findByIdAndOwnerId(TEST_UPLOAD_ID, TEST_USER_ID))
+                .thenReturn(Optional.of(uploadSession));
+
+        assertThrows(ValidationException.class, () -> sut.writeChunk(TEST_USER_NAME, TEST_UPLOAD_ID, 4,
+                new ByteArrayInputStream(new byte[1])));
+        verify(fileContentStorage, never()).write(anyString(), anyLong(), any(InputStream.class));
+    }
+
+    @Test
+    @DisplayName("writeChunk() ошибка. Фиксация началась во время записи")
+    void writeChunk_commit_started_failure() throws IOException {
+        var lockedUploadSession = createUploadSession(Set.of());
+        lockedUploadSession.setCommitting(true);
+        when(uploadSessionRepository.findByIdAndOwnerId(TEST_UPLOAD_ID, TEST_USER_ID))
+                .thenReturn(Optional.of(createUploadSession(Set.of())));
+        when(uploadSessionRepository.findForUpdate(TEST_UPLOAD_ID, TEST_USER_ID))
+                .thenReturn(Optional.of(lockedUploadSession));
+        when(fileContentStorage.write(eq(TEST_UPLOAD_ID), eq(16L), any(InputStream.class)))
+                .then(invocation -> (long) invocation.<InputStream>getArgument(2).readAllBytes().length);
+
+        assertThrows(ValidationException.class, () -> sut.writeChunk(TEST_USER_NAME, TEST_UPLOAD_ID, 4,
+                new ByteArrayInputStream(new byte[1])));
+        assertThat(lockedUploadSession.getReceivedChunks(), empty());
+    }
+
+    @Test
+    @DisplayName("commit() ошибка. Получены не все части")
+    void commit_incomplete_failure() {
+        when(uploadSessionRepository.findForUpdate(TEST_UPLOAD_ID, TEST_USER_ID))
+                .thenReturn(Optional.of(createUploadSession(Set.of(0, 1))));
+        assertThrows(ValidationException.class, () -> sut.commit(TEST_USER_NAME, TEST_UPLOAD_ID));
+        verifyNoInteractions(userFilesService);
+    }
+
+    @Test
+    @DisplayName("commit() успешное сохранение файла")
+    void commit_success() throws IOException {
+        var uploadSession = createUploadSession(Set.of(0, 1, 2, 3, 4));
+        when(uploadSessionRepository.findForUpdate(TEST_UPLOAD_ID, TEST_USER_ID))
+                .thenReturn(Optional.of(uploadSession));
+        when(uploadSessionRepository.deleteByIdAndOwnerId(TEST_UPLOAD_ID, TEST_USER_ID)).thenReturn(1);
+
+        sut.commit(TEST_USER_NAME, TEST_UPLOAD_ID);
+
+        assertThat(uploadSession.isCommitting(), is(true));
+        var inOrder = inOrder(fileContentStorage, uploadSessionRepository, userFilesService);
+        inOrder.verify(uploadSessionRepository).findForUpdate(TEST_UPLOAD_ID, TEST_USER_ID);
+        inOrder.verify(fileContentStorage).seal(TEST_UPLOAD_ID);
+        inOrder.verify(uploadSessionRepository).deleteByIdAndOwnerId(TEST_UPLOAD_ID, TEST_USER_ID);
+        inOrder.verify(userFilesService).registerFile(
+                TEST_USER_NAME, TEST_FILE_NAME, TEST_FILE_HASH, TEST_UPLOAD_ID, TEST_FILE_CONTENT.length);
+    }
+
+    @Test
+    @DisplayName("commit() ошибка. Сессия уже зафиксирована параллельным запросом")
+    void commit_concurrent_failure() {
+        when(uploadSessionRepository.findForUpdate(TEST_UPLOAD_ID, TEST_USER_ID))
+                .thenReturn(Optional.of(createUploadSession(Set.of(0, 1, 2, 3, 4))));
+        when(uploadSessionRepository.deleteByIdAndOwnerId(TEST_UPLOAD_ID, TEST_USER_ID)).thenReturn(0);
+
+        assertThrows(FileNotFoundException.class, () -> sut.commit(TEST_USER_NAME, TEST_UPLOAD_ID));
+        verifyNoInteractions(userFilesService);
+    }
+
+    @Test
+    @DisplayName("commit() ошибка. Сессия уже фиксируется параллельным запросом")
+    void commit_already_committing_failure() throws IOException {
+        var uploadSession = createUploadSession(Set.of(0, 1, 2, 3, 4));
+        uploadSession.setCommitting(true);
+        when(uploadSessionRepository.findForUpdate(TEST_UPLOAD_ID, TEST_USER_ID))
+                .thenReturn(Optional.of(uploadSession));
+
+        assertThrows(ValidationException.class, () -> sut.commit(TEST_USER_NAME, TEST_UPLOAD_ID));
+        verify(fileContentStorage, never()).seal(anyString());
+    }
+
+    @Test
+    @DisplayName("commit() сессию можно зафиксировать повторно после ошибки")
+    void commit_failure_reopens_session() throws IOException {
+        var uploadSession = createUploadSession(Set.of(0, 1, 2, 3, 4));
+        when(uploadSessionRepository.findForUpdate(TEST_UPLOAD_ID, TEST_USER_ID))
+                .thenReturn(Optional.of(uploadSession));
+        doThrow(new IOException("disk full")).when(fileContentStorage).seal(TEST_UPLOAD_ID);
+
+        assertThrows(IOException.class, () -> sut.commit(TEST_USER_NAME, TEST_UPLOAD_ID));
+
+        assertThat(uploadSession.isCommitting(), is(false));
+        verifyNoInteractions(userFilesService);
+    }
+
+    @Test
+    @DisplayName("abort() удаляет сессию и её содержимое")
+    void abort_success() throws IOException {
+        when(uploadSessionRepository.deleteByIdAndOwnerId(TEST_UPLOAD_ID, TEST_USER_ID)).thenReturn(1);
+        when(fileContentStorage.contains(TEST_UPLOAD_ID)).thenReturn(true);
+
+        sut.abort(TEST_USER_NAME, TEST_UPLOAD_ID);
+
+        verify(fileContentStorage).remove(TEST_UPLOAD_ID);
+    }
+
+    @Test
+    @DisplayName("abort() ошибка. Сессия уже зафиксирована, содержимое не удаляется")
+    void abort_committed_failure() throws IOException {
+        when(uploadSessionRepository.deleteByIdAndOwnerId(TEST_UPLOAD_ID, TEST_USER_ID)).thenReturn(0);
+
+        assertThrows(FileNotFoundException.class, () -> sut.abort(TEST_USER_NAME, TEST_UPLOAD_ID));
+
+        verify(fileContentStorage, never()).remove(anyString());
+    }
+
+    @Test
+    @DisplayName("expireSessions() удаляет устаревшие сессии и их содержимое")
+    void expireSessions_success() throws IOException {
+        when(uploadSessionRepository.findCreatedBefore(any(Instant.class), any(Pageable.class)))
+                .thenReturn(List.of(TEST_UPLOAD_ID));
+        when(fileContentStorage.contains(TEST_UPLOAD_ID)).thenReturn(true);
+
+        var result = sut.expireSessions();
+
+        assertThat(result, is(1L));
+        verify(uploadSessionRepository).deleteAllByIdInBatch(List.of(TEST_UPLOAD_ID));
+        verify(fileContentStorage).remove(TEST_UPLOAD_ID);
+    }
+}
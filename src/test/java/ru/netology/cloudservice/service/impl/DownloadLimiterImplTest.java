@@ -0,0 +1,61 @@
+package ru.netology.cloudservice.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.netology.cloudservice.exception.ServiceOverloadedException;
+import ru.netology.cloudservice.exception.TooManyRequestsException;
+import ru.netology.cloudservice.service.DownloadLimiter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DownloadLimiterImplTest {
+    private static final String FIRST_USER_NAME = "FIRST_USER_NAME";
+    private static final String SECOND_USER_NAME = "SECOND_USER_NAME";
+    private static final String THIRD_USER_NAME = "THIRD_USER_NAME";
+    private static final int MAX_CONCURRENT = 3;
+    private static final int MAX_CONCURRENT_PER_USER = 2;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private DownloadLimiterImpl sut;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        sut = new DownloadLimiterImpl(meterRegistry, MAX_CONCURRENT, MAX_CONCURRENT_PER_USER);
+    }
+
+    @Test
+    @DisplayName("acquire() ошибка превышен лимит пользователя")
+    void acquire_user_limit_failure() {
+        sut.acquire(FIRST_USER_NAME);
+        DownloadLimiter.Permit permit = sut.acquire(FIRST_USER_NAME);
+
+        assertThrows(TooManyRequestsException.class, () -> sut.acquire(FIRST_USER_NAME));
+
+        permit.close();
+        permit.close();
+        sut.acquire(FIRST_USER_NAME);
+        assertThat(sut.getActiveDownloads(FIRST_USER_NAME), is(2));
+    }
+
+    @Test
+    @DisplayName("acquire() ошибка превышен общий лимит")
+    void acquire_global_limit_failure() {
+        sut.acquire(FIRST_USER_NAME);
+        sut.acquire(FIRST_USER_NAME);
+        DownloadLimiter.Permit permit = sut.acquire(SECOND_USER_NAME);
+
+        assertThrows(ServiceOverloadedException.class, () -> sut.acquire(THIRD_USER_NAME));
+        assertThat(sut.getActiveDownloads(THIRD_USER_NAME), is(0));
+        assertThat(meterRegistry.get("downloads.active").gauge().value(), is(3.0));
+
+        permit.close();
+        sut.acquire(THIRD_USER_NAME);
+        assertThat(sut.getActiveDownloads(SECOND_USER_NAME), is(0));
+    }
+}
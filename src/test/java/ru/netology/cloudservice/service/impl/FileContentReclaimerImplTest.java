@@ -0,0 +1,107 @@
+package ru.netology.cloudservice.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import ru.netology.cloudservice.model.projection.FileContentProjection;
+import ru.netology.cloudservice.repository.FileInfoRepository;
+import ru.netology.cloudservice.service.FileContentStorage;
+
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FileContentReclaimerImplTest {
+    private static final Duration TEST_RETENTION = Duration.ofDays(1);
+    private static final int TEST_BATCH_SIZE = 2;
+    private static final long TEST_FILE_SIZE = 100;
+
+    @Mock
+    private FileInfoRepository fileInfoRepository;
+
+    @Mock
+    private FileContentStorage fileContentStorage;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private FileContentReclaimerImpl sut;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        sut = new FileContentReclaimerImpl(fileInfoRepository, fileContentStorage, meterRegistry,
+                TEST_RETENTION, TEST_BATCH_SIZE, Duration.ZERO, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sut.destroy();
+    }
+
+    @Test
+    @DisplayName("reclaim() удаляет содержимое и строки удалённых файлов пакетами")
+    void reclaim_batches_success() throws IOException {
+        when(fileInfoRepository.findDeletedBefore(any(Instant.class), eq(0L), any(Pageable.class)))
+                .thenReturn(List.of(deletedFile(1, "uid1"), deletedFile(2, "uid2")));
+        when(fileInfoRepository.findDeletedBefore(any(Instant.class), eq(2L), any(Pageable.class)))
+                .thenReturn(List.of(deletedFile(3, "uid3")));
+        lenient().doThrow(new NoSuchFileException("uid3")).when(fileContentStorage).remove("uid3");
+
+        assertThat(sut.reclaim(), is(3L));
+
+        verify(fileInfoRepository).deleteAllByIdInBatch(List.of(1L, 2L));
+        verify(fileInfoRepository).deleteAllByIdInBatch(List.of(3L));
+        assertThat(meterRegistry.counter("files.reclaimed").count(), is(3.0));
+        assertThat(meterRegistry.counter("files.reclaimed.bytes").count(), is(2.0 * TEST_FILE_SIZE));
+        verify(fileContentStorage, never()).purgeUnreferenced();
+    }
+
+    @Test
+    @DisplayName("reclaim() строка остаётся, если содержимое не удалось удалить")
+    void reclaim_remove_failure() throws IOException {
+        when(fileInfoRepository.findDeletedBefore(any(Instant.class), anyLong(), any(Pageable.class)))
+                .thenReturn(List.of(deletedFile(1, "uid1")));
+        doThrow(new AccessDeniedException("uid1")).when(fileContentStorage).remove("uid1");
+
+        assertThat(sut.reclaim(), is(0L));
+
+        verify(fileInfoRepository, never()).deleteAllByIdInBatch(any());
+        assertThat(meterRegistry.counter("files.reclaim.failed").count(), is(1.0));
+    }
+
+    private static FileContentProjection deletedFile(long id, String contentUid) {
+        return new FileContentProjection() {
+            @Override
+            public long getId() {
+                return id;
+            }
+
+            @Override
+            public String getContentUid() {
+                return contentUid;
+            }
+
+            @Override
+            public long getFilesize() {
+                return TEST_FILE_SIZE;
+            }
+        };
+    }
+}
@@ -0,0 +1,141 @@
+package ru.netology.cloudservice.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static ru.netology.cloudservice.service.impl.FileContentStorageCompressingImpl.COMPRESSED_SUFFIX;
+
+class FileContentStorageCompressingImplTest {
+    private static final String TEST_CONTENT_UID = "test_content_uid";
+    private static final int SAMPLE_SIZE = 1024;
+    private static final byte[] TEXT_CONTENT = "2024-01-01 INFO request served in 12 ms\n".repeat(1000).getBytes(UTF_8);
+    private static final byte[] RANDOM_CONTENT = new byte[16 * 1024];
+
+    static {
+        new Random(42).nextBytes(RANDOM_CONTENT);
+    }
+
+    @TempDir
+    private Path rootPath;
+
+    FileContentStorageFileSystemImpl storage;
+    FileContentStorageCompressingImpl sut;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storage = new FileContentStorageFileSystemImpl(rootPath, 1);
+        sut = new FileContentStorageCompressingImpl(storage, SAMPLE_SIZE, 0.9);
+    }
+
+    @Test
+    @DisplayName("put() сжимаемое содержимое хранится сжатым и читается без изменений")
+    void put_compressible_success() throws IOException {
+        var size = sut.put(TEST_CONTENT_UID, new ByteArrayInputStream(TEXT_CONTENT));
+
+        assertThat(size, is((long) TEXT_CONTENT.length));
+        assertThat(storage.contains(TEST_CONTENT_UID + COMPRESSED_SUFFIX), is(true));
+        assertThat(storage.getResource(TEST_CONTENT_UID + COMPRESSED_SUFFIX).contentLength(),
+                lessThan((long) TEXT_CONTENT.length / 5));
+        assertThat(sut.contains(TEST_CONTENT_UID), is(true));
+        try (var inputStream = sut.get(TEST_CONTENT_UID)) {
+            assertThat(Arrays.equals(inputStream.readAllBytes(), TEXT_CONTENT), is(true));
+        }
+        var resource = sut.getResource(TEST_CONTENT_UID);
+        assertThat(resource.contentLength(), is((long) TEXT_CONTENT.length));
+        try (var inputStream = resource.getInputStream()) {
+            assertThat(Arrays.equals(inputStream.readAllBytes(), TEXT_CONTENT), is(true));
+        }
+    }
+
+    @Test
+    @DisplayName("put() несжимаемое содержимое хранится как есть")
+    void put_incompressible_stored_raw() throws IOException {
+        var size = sut.put(TEST_CONTENT_UID, new ByteArrayInputStream(RANDOM_CONTENT));
+
+        assertThat(size, is((long) RANDOM_CONTENT.length));
+        assertThat(storage.contains(TEST_CONTENT_UID + COMPRESSED_SUFFIX), is(false));
+        assertThat(sut.getDeflated(TEST_CONTENT_UID).isPresent(), is(false));
+        try (var inputStream = sut.get(TEST_CONTENT_UID)) {
+            assertThat(Arrays.equals(inputStream.readAllBytes(), RANDOM_CONTENT), is(true));
+        }
+    }
+
+    @Test
+    @DisplayName("getDeflated() блоки с завершающим блоком образуют корректный deflate поток")
+    void getDeflated_success() throws IOException {
+        sut.put(TEST_CONTENT_UID, new ByteArrayInputStream(TEXT_CONTENT));
+
+        var deflated = sut.getDeflated(TEST_CONTENT_UID).orElseThrow();
+
+        assertThat(deflated.getLength(), is((long) TEXT_CONTENT.length));
+        var blocks = new ByteArrayOutputStream();
+        try (InputStream inputStream = deflated.getBlocks().getInputStream()) {
+            inputStream.transferTo(blocks);
+        }
+        assertThat((long) blocks.size(), is(deflated.getBlocks().contentLength()));
+        var terminated = new SequenceInputStream(
+                new ByteArrayInputStream(blocks.toByteArray()), new ByteArrayInputStream(new byte[]{0x03, 0x00}));
+        try (var inputStream = new InflaterInputStream(terminated, new Inflater(true))) {
+            assertThat(Arrays.equals(inputStream.readAllBytes(), TEXT_CONTENT), is(true));
+        }
+    }
+
+    @Test
+    @DisplayName("put() замена содержимого удаляет прежний вариант хранения")
+    void put_replace_success() throws IOException {
+        sut.put(TEST_CONTENT_UID, new ByteArrayInputStream(TEXT_CONTENT));
+        sut.put(TEST_CONTENT_UID, new ByteArrayInputStream(RANDOM_CONTENT));
+
+        assertThat(storage.contains(TEST_CONTENT_UID + COMPRESSED_SUFFIX), is(false));
+        try (Stream<String> uids = sut.list()) {
+            assertThat(uids.collect(Collectors.toList()), contains(TEST_CONTENT_UID));
+        }
+    }
+
+    @Test
+    @DisplayName("list() и remove() работают с uid без признака сжатия")
+    void list_remove_success() throws IOException {
+        sut.put(TEST_CONTENT_UID, new ByteArrayInputStream(TEXT_CONTENT));
+
+        try (Stream<String> uids = sut.list()) {
+            assertThat(uids.collect(Collectors.toList()), contains(TEST_CONTENT_UID));
+        }
+        sut.remove(TEST_CONTENT_UID);
+
+        assertThat(sut.contains(TEST_CONTENT_UID), is(false));
+        assertThrows(NoSuchFileException.class, () -> sut.remove(TEST_CONTENT_UID));
+    }
+
+    @Test
+    @DisplayName("write() сохраняет части загрузки без сжатия")
+    void write_stored_raw() throws IOException {
+        sut.write(TEST_CONTENT_UID, 0, new ByteArrayInputStream(TEXT_CONTENT));
+
+        assertThat(storage.contains(TEST_CONTENT_UID), is(true));
+        try (var inputStream = sut.get(TEST_CONTENT_UID)) {
+            assertThat(Arrays.equals(inputStream.readAllBytes(), TEXT_CONTENT), is(true));
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package ru.netology.cloudservice.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FileContentStorageDeduplicatingImplTest {
+    private static final String FIRST_CONTENT_UID = "first_content_uid";
+    private static final String SECOND_CONTENT_UID = "second_content_uid";
+    private static final byte[] TEST_FILE_CONTENT = "test_file_content_bytes".getBytes();
+    private static final byte[] OTHER_FILE_CONTENT = "other_file_content_bytes".getBytes();
+
+    @TempDir
+    private Path rootPath;
+
+    FileContentStorageDeduplicatingImpl sut;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        sut = new FileContentStorageDeduplicatingImpl(rootPath);
+    }
+
+    @Test
+    @DisplayName("put() одинаковое содержимое хранится один раз")
+    void put_same_content_deduplicated_success() throws IOException {
+        sut.put(FIRST_CONTENT_UID, new ByteArrayInputStream(TEST_FILE_CONTENT));
+        sut.put(SECOND_CONTENT_UID, new ByteArrayInputStream(TEST_FILE_CONTENT));
+        assertThat(sut.countObjects(), is(1L));
+        assertThat(sut.getReferenceCount(FIRST_CONTENT_UID), is(2));
+        try (var resultInputStream = sut.get(SECOND_CONTENT_UID)) {
+            assertThat(Arrays.equals(resultInputStream.readAllBytes(), TEST_FILE_CONTENT), is(true));
+        }
+    }
+
+    @Test
+    @DisplayName("getLastModified() новая ссылка на старое содержимое считается новой")
+    void getLastModified_new_link_success() throws IOException {
+        sut.put(FIRST_CONTENT_UID, new ByteArrayInputStream(TEST_FILE_CONTENT));
+        Files.setLastModifiedTime(sut.resolve(FIRST_CONTENT_UID), FileTime.from(Instant.now().minus(Duration.ofDays(1))));
+        var linkedAfter = Instant.now().minusSeconds(1);
+
+        sut.put(SECOND_CONTENT_UID, new ByteArrayInputStream(TEST_FILE_CONTENT));
+
+        assertThat(sut.getLastModified(SECOND_CONTENT_UID).isAfter(linkedAfter), is(true));
+    }
+
+    @Test
+    @DisplayName("put() разное содержимое хранится отдельно")
+    void put_different_content_success() throws IOException {
+        sut.put(FIRST_CONTENT_UID, new ByteArrayInputStream(TEST_FILE_CONTENT));
+        var contentSize = sut.put(SECOND_CONTENT_UID, new ByteArrayInputStream(OTHER_FILE_CONTENT));
+        assertThat((int) contentSize, is(OTHER_FILE_CONTENT.length));
+        assertThat(sut.countObjects(), is(2L));
+        assertThat(sut.getReferenceCount(FIRST_CONTENT_UID), is(1));
+    }
+
+    @Test
+    @DisplayName("seal() содержимое, записанное частями, хранится один раз")
+    void seal_deduplicated_success() throws IOException {
+        sut.put(FIRST_CONTENT_UID, new ByteArrayInputStream(TEST_FILE_CONTENT));
+        sut.write(SECOND_CONTENT_UID, 0, new ByteArrayInputStream(TEST_FILE_CONTENT, 0, 4));
+        sut.write(SECOND_CONTENT_UID, 4, new ByteArrayInputStream(TEST_FILE_CONTENT, 4, TEST_FILE_CONTENT.length - 4));
+
+        sut.seal(SECOND_CONTENT_UID);
+
+        assertThat(sut.countObjects(), is(1L));
+        assertThat(sut.getReferenceCount(FIRST_CONTENT_UID), is(2));
+        try (var resultInputStream = sut.get(SECOND_CONTENT_UID)) {
+            assertThat(Arrays.equals(resultInputStream.readAllBytes(), TEST_FILE_CONTENT), is(true));
+        }
+    }
+
+    @Test
+    @DisplayName("write() после seal() не изменяет общий объект")
+    void write_after_seal_failure() throws IOException {
+        sut.put(FIRST_CONTENT_UID, new ByteArrayInputStream(TEST_FILE_CONTENT));
+        sut.write(SECOND_CONTENT_UID, 0, new ByteArrayInputStream(TEST_FILE_CONTENT));
+        try (var lateWriter = FileChannel.open(sut.resolve(SECOND_CONTENT_UID), StandardOpenOption.WRITE)) {
+            sut.seal(SECOND_CONTENT_UID);
+
+            assertThrows(IOException.class, () ->
+                    sut.write(SECOND_CONTENT_UID, 0, new ByteArrayInputStream(OTHER_FILE_CONTENT)));
+            lateWriter.write(ByteBuffer.wrap(OTHER_FILE_CONTENT), 0);
+        }
+
+        try (var resultInputStream = sut.get(FIRST_CONTENT_UID)) {
+            assertThat(Arrays.equals(resultInputStream.readAllBytes(), TEST_FILE_CONTENT), is(true));
+        }
+        assertThat(sut.getReferenceCount(FIRST_CONTENT_UID), is(2));
+    }
+
+    @Test
+    @DisplayName("remove() удаляет объект вместе с последней ссылкой")
+    void remove_last_reference_success() throws IOException {
+        sut.put(FIRST_CONTENT_UID, new ByteArrayInputStream(TEST_FILE_CONTENT));
+        sut.put(SECOND_CONTENT_UID, new ByteArrayInputStream(TEST_FILE_CONTENT));
+
+        sut.remove(FIRST_CONTENT_UID);
+        assertThat(sut.countObjects(), is(1L));
+        assertThat(sut.getReferenceCount(SECOND_CONTENT_UID), is(1));
+
+        sut.remove(SECOND_CONTENT_UID);
+        assertThat(sut.countObjects(), is(0L));
+    }
+
+    @Test
+    @DisplayName("purgeUnreferenced() удаляет содержимое без ссылок")
+    void purgeUnreferenced_success() throws IOException {
+        sut.put(FIRST_CONTENT_UID, new ByteArrayInputStream(TEST_FILE_CONTENT));
+        sut.put(SECOND_CONTENT_UID, new ByteArrayInputStream(OTHER_FILE_CONTENT));
+        Files.delete(sut.resolve(FIRST_CONTENT_UID));
+
+        var reclaimedBytes = sut.purgeUnreferenced();
+
+        assertThat(reclaimedBytes, is((long) TEST_FILE_CONTENT.length));
+        assertThat(sut.countObjects(), is(1L));
+        assertThat(sut.getReferenceCount(SECOND_CONTENT_UID), is(1));
+    }
+
+    @Test
+    @DisplayName("put() с шардированием не смешивает ссылки и объекты")
+    void put_sharded_success() throws IOException {
+        var shardedSut = new FileContentStorageDeduplicatingImpl(rootPath, 2);
+        shardedSut.put(FIRST_CONTENT_UID, new ByteArrayInputStream(TEST_FILE_CONTENT));
+        shardedSut.put(SECOND_CONTENT_UID, new ByteArrayInputStream(TEST_FILE_CONTENT));
+        assertThat(shardedSut.getReferenceCount(FIRST_CONTENT_UID), is(2));
+        try (Stream<String> uids = shardedSut.list()) {
+            assertThat(uids.collect(Collectors.toList()), containsInAnyOrder(FIRST_CONTENT_UID, SECOND_CONTENT_UID));
+        }
+        try (Stream<Path> objects = Files.walk(rootPath.resolve(".objects"))) {
+            var objectPath = objects.filter(Files::isRegularFile).findFirst().orElseThrow();
+            assertThat(rootPath.resolve(".objects").relativize(objectPath).getNameCount(), is(3));
+        }
+        assertThat(shardedSut.countObjects(), is(1L));
+    }
+
+    @Test
+    @DisplayName("migrateLayout() переносит объекты плоской раскладки в шарды без потери ссылок")
+    void migrateLayout_objects_success() throws IOException {
+        sut.put(FIRST_CONTENT_UID, new ByteArrayInputStream(TEST_FILE_CONTENT));
+        var shardedSut = new FileContentStorageDeduplicatingImpl(rootPath, 2);
+
+        shardedSut.migrateLayout();
+        shardedSut.put(SECOND_CONTENT_UID, new ByteArrayInputStream(TEST_FILE_CONTENT));
+
+        try (Stream<Path> flatObjects = Files.list(rootPath.resolve(".objects"))) {
+            assertThat(flatObjects.filter(Files::isRegularFile).count(), is(0L));
+        }
+        assertThat(shardedSut.countObjects(), is(1L));
+        assertThat(shardedSut.getReferenceCount(FIRST_CONTENT_UID), is(2));
+        assertThat(shardedSut.purgeUnreferenced(), is(0L));
+    }
+}
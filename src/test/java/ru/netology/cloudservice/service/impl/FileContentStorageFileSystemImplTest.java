@@ -7,16 +7,32 @@ import org.junit.jupiter.api.io.TempDir;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 class FileContentStorageFileSystemImplTest {
     private static final String TEST_FILE_CONTENT_UID = "test_file_content_uid";
     private static final byte[] TEST_FILE_CONTENT = "test_file_content_bytes".getBytes();
+    private static final byte[] OTHER_FILE_CONTENT = "other_file_content_bytes".getBytes();
+    private static final int SHARD_LEVELS = 2;
 
     @TempDir
     private Path rootPath;
@@ -59,6 +75,21 @@ class FileContentStorageFileSystemImplTest {
         assertThrows(IOException.class, () -> sut.get("NOT_EXIST_UID"));
     }
 
+    @Test
+    @DisplayName("getResource() успешное получение ресурса файла")
+    void getResource_success() throws IOException {
+        sut.put(TEST_FILE_CONTENT_UID, new ByteArrayInputStream(TEST_FILE_CONTENT));
+        var resource = sut.getResource(TEST_FILE_CONTENT_UID);
+        assertThat(resource.isFile(), is(true));
+        assertThat((int) resource.contentLength(), is(TEST_FILE_CONTENT.length));
+    }
+
+    @Test
+    @DisplayName("getResource() ошибка файл не найден IOException")
+    void getResource_not_found_failure() {
+        assertThrows(IOException.class, () -> sut.getResource("NOT_EXIST_UID"));
+    }
+
     @Test
     @DisplayName("put() успешно сохраняет файл")
     void put_success() throws IOException {
@@ -76,6 +107,20 @@ class FileContentStorageFileSystemImplTest {
         assertThat((int) contentSize, is(TEST_FILE_CONTENT.length));
     }
 
+    @Test
+    @DisplayName("write() успешно записывает части файла в произвольном порядке")
+    void write_out_of_order_success() throws IOException {
+        int half = TEST_FILE_CONTENT.length / 2;
+        var secondPartSize = sut.write(TEST_FILE_CONTENT_UID, half,
+                new ByteArrayInputStream(TEST_FILE_CONTENT, half, TEST_FILE_CONTENT.length - half));
+        var firstPartSize = sut.write(TEST_FILE_CONTENT_UID, 0,
+                new ByteArrayInputStream(TEST_FILE_CONTENT, 0, half));
+        try (var resultInputStream = sut.get(TEST_FILE_CONTENT_UID)) {
+            assertThat(Arrays.equals(resultInputStream.readAllBytes(), TEST_FILE_CONTENT), is(true));
+        }
+        assertThat((int) (firstPartSize + secondPartSize), is(TEST_FILE_CONTENT.length));
+    }
+
     @Test
     @DisplayName("remove() успешно удаляет файл")
     void remove_success() throws IOException {
@@ -92,4 +137,149 @@ class FileContentStorageFileSystemImplTest {
     void remove_not_found_failure() {
         assertThrows(IOException.class, () -> sut.remove(TEST_FILE_CONTENT_UID));
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("list() возвращает только файлы содержимого")
+    void list_success() throws IOException {
+        sut.put(TEST_FILE_CONTENT_UID, new ByteArrayInputStream(TEST_FILE_CONTENT));
+        Files.createDirectories(rootPath.resolve(".tmp"));
+        try (Stream<String> uids = sut.list()) {
+            assertThat(uids.collect(Collectors.toList()), contains(TEST_FILE_CONTENT_UID));
+        }
+    }
+
+    @Test
+    @DisplayName("put() с шардированием сохраняет файл во вложенном каталоге")
+    void put_sharded_success() throws IOException {
+        var shardedSut = new FileContentStorageFileSystemImpl(rootPath, SHARD_LEVELS);
+        shardedSut.put(TEST_FILE_CONTENT_UID, new ByteArrayInputStream(TEST_FILE_CONTENT));
+
+        assertThat(Files.exists(rootPath.resolve(TEST_FILE_CONTENT_UID)), is(false));
+        assertThat(shardedSut.contains(TEST_FILE_CONTENT_UID), is(true));
+        try (Stream<Path> paths = Files.walk(rootPath)) {
+            var storedPath = paths.filter(Files::isRegularFile).findFirst().orElseThrow();
+            assertThat(rootPath.relativize(storedPath).getNameCount(), is(SHARD_LEVELS + 1));
+        }
+        try (Stream<String> uids = shardedSut.list()) {
+            assertThat(uids.collect(Collectors.toList()), contains(TEST_FILE_CONTENT_UID));
+        }
+    }
+
+    @Test
+    @DisplayName("listAfter() продолжает обход с заданного uid в том же порядке")
+    void listAfter_resume_success() throws IOException {
+        var shardedSut = new FileContentStorageFileSystemImpl(rootPath, SHARD_LEVELS);
+        for (int i = 0; i < 10; i++) {
+            shardedSut.put(TEST_FILE_CONTENT_UID + i, new ByteArrayInputStream(TEST_FILE_CONTENT));
+        }
+        List<String> allUids;
+        try (Stream<String> uids = shardedSut.listAfter(null)) {
+            allUids = uids.collect(Collectors.toList());
+        }
+        assertThat(allUids.size(), is(10));
+
+        String cursor = allUids.get(4);
+        shardedSut.remove(cursor);
+
+        try (Stream<String> uids = shardedSut.listAfter(cursor)) {
+            assertThat(uids.collect(Collectors.toList()), is(allUids.subList(5, allUids.size())));
+        }
+    }
+
+    @Test
+    @DisplayName("listAfter() ошибка. Хранилище без шардирования")
+    void listAfter_flat_failure() {
+        assertThrows(UnsupportedOperationException.class, () -> sut.listAfter(null));
+    }
+
+    @Test
+    @DisplayName("migrateLayout() переносит файлы плоской раскладки в шарды")
+    void migrateLayout_success() throws IOException {
+        sut.put(TEST_FILE_CONTENT_UID, new ByteArrayInputStream(TEST_FILE_CONTENT));
+        var shardedSut = new FileContentStorageFileSystemImpl(rootPath, SHARD_LEVELS);
+        assertThat(shardedSut.contains(TEST_FILE_CONTENT_UID), is(true));
+
+        var migrated = shardedSut.migrateLayout();
+
+        assertThat(migrated, is(1L));
+        assertThat(Files.exists(rootPath.resolve(TEST_FILE_CONTENT_UID)), is(false));
+        try (var resultInputStream = shardedSut.get(TEST_FILE_CONTENT_UID)) {
+            assertThat(Arrays.equals(resultInputStream.readAllBytes(), TEST_FILE_CONTENT), is(true));
+        }
+        assertThat(shardedSut.migrateLayout(), is(0L));
+    }
+
+    @Test
+    @DisplayName("write() переносит файл плоской раскладки в шард перед дозаписью")
+    void write_flat_file_moved_to_shard_success() throws IOException {
+        sut.write(TEST_FILE_CONTENT_UID, 0, new ByteArrayInputStream(TEST_FILE_CONTENT, 0, 4));
+        var shardedSut = new FileContentStorageFileSystemImpl(rootPath, SHARD_LEVELS);
+
+        shardedSut.write(TEST_FILE_CONTENT_UID, 4,
+                new ByteArrayInputStream(TEST_FILE_CONTENT, 4, TEST_FILE_CONTENT.length - 4));
+
+        assertThat(Files.exists(rootPath.resolve(TEST_FILE_CONTENT_UID)), is(false));
+        assertThat(shardedSut.migrateLayout(), is(0L));
+        try (var resultInputStream = shardedSut.get(TEST_FILE_CONTENT_UID)) {
+            assertThat(Arrays.equals(resultInputStream.readAllBytes(), TEST_FILE_CONTENT), is(true));
+        }
+    }
+
+    @Test
+    @DisplayName("put() при обрыве потока не оставляет частичный файл")
+    void put_interrupted_failure() throws IOException {
+        sut.put(TEST_FILE_CONTENT_UID, new ByteArrayInputStream(TEST_FILE_CONTENT));
+        InputStream brokenInputStream = new SequenceInputStream(
+                new ByteArrayInputStream(OTHER_FILE_CONTENT), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("connection reset");
+            }
+        });
+
+        assertThrows(IOException.class, () -> sut.put(TEST_FILE_CONTENT_UID, brokenInputStream));
+
+        try (var resultInputStream = sut.get(TEST_FILE_CONTENT_UID)) {
+            assertThat(Arrays.equals(resultInputStream.readAllBytes(), TEST_FILE_CONTENT), is(true));
+        }
+        try (Stream<Path> tempFiles = Files.list(rootPath.resolve(".tmp"))) {
+            assertThat(tempFiles.count(), is(0L));
+        }
+    }
+
+    @Test
+    @DisplayName("put() сбрасывает файл и каталог на диск перед публикацией")
+    void put_sync_success() throws IOException {
+        FileSyncer fileSyncer = mock(FileSyncer.class);
+        var syncingSut = new FileContentStorageFileSystemImpl(rootPath, SHARD_LEVELS, fileSyncer);
+
+        syncingSut.put(TEST_FILE_CONTENT_UID, new ByteArrayInputStream(TEST_FILE_CONTENT));
+
+        verify(fileSyncer).sync(any(FileChannel.class));
+        verify(fileSyncer).syncDirectory(syncingSut.resolve(TEST_FILE_CONTENT_UID).getParent());
+    }
+
+    @Test
+    @DisplayName("seal() сбрасывает записанный частями файл и каталог на диск")
+    void seal_sync_success() throws IOException {
+        FileSyncer fileSyncer = mock(FileSyncer.class);
+        var syncingSut = new FileContentStorageFileSystemImpl(rootPath, SHARD_LEVELS, fileSyncer);
+        syncingSut.write(TEST_FILE_CONTENT_UID, 0, new ByteArrayInputStream(TEST_FILE_CONTENT));
+
+        syncingSut.seal(TEST_FILE_CONTENT_UID);
+
+        verify(fileSyncer).sync(any(FileChannel.class));
+        verify(fileSyncer).syncDirectory(syncingSut.resolve(TEST_FILE_CONTENT_UID).getParent());
+    }
+
+    @Test
+    @DisplayName("Устаревшие временные файлы удаляются при запуске")
+    void constructor_removes_stale_temp_files() throws IOException {
+        Path staleTempFile = Files.createFile(rootPath.resolve(".tmp").resolve("stale"));
+        Files.setLastModifiedTime(staleTempFile, FileTime.from(Instant.now().minus(Duration.ofDays(2))));
+
+        new FileContentStorageFileSystemImpl(rootPath);
+
+        assertThat(Files.exists(staleTempFile), is(false));
+    }
+}
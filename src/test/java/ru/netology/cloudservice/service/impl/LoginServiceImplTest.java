@@ -10,15 +10,22 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import ru.netology.cloudservice.model.request.LoginRequest;
 import ru.netology.cloudservice.model.response.LoginResponse;
+import ru.netology.cloudservice.service.PasswordVerifier;
 import ru.netology.cloudservice.service.TokenRegistrar;
+import ru.netology.cloudservice.service.UserIdResolver;
+
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -27,16 +34,23 @@ class LoginServiceImplTest {
     private static final String TEST_PASSWORD = "TEST_PASSWORD";
     private static final String TEST_ROLE = "USER";
     private static final String TEST_TOKEN = "TEST-TOKEN-VALUE";
+    private static final String TEST_UPGRADED_PASSWORD = "{bcrypt}TEST_UPGRADED_PASSWORD";
 
     @Mock
     private UserDetailsService userDetailsService;
 
     @Mock
-    private PasswordEncoder passwordEncoder;
+    private PasswordVerifier passwordVerifier;
 
     @Mock
     private TokenRegistrar tokenRegistrar;
 
+    @Mock
+    private UserIdResolver userIdResolver;
+
+    @Mock
+    private UserDetailsPasswordService userDetailsPasswordService;
+
     @InjectMocks
     private LoginServiceImpl sut;
 
@@ -50,13 +64,35 @@ class LoginServiceImplTest {
                 .build();
 
         when(userDetailsService.loadUserByUsername(TEST_USER_NAME)).thenReturn(userDetails);
-        when(passwordEncoder.matches(TEST_PASSWORD, TEST_PASSWORD)).thenReturn(true);
+        when(passwordVerifier.matches(userDetails, TEST_PASSWORD)).thenReturn(true);
         when(tokenRegistrar.register(userDetails)).thenReturn(TEST_TOKEN);
 
         LoginRequest loginRequest = new LoginRequest(TEST_USER_NAME, TEST_PASSWORD);
         LoginResponse loginResponse = sut.login(loginRequest);
 
         Assertions.assertEquals(TEST_TOKEN, loginResponse.getAuthToken());
+        verify(userDetailsPasswordService, never()).updatePassword(any(UserDetails.class), anyString());
+    }
+
+    @Test
+    @DisplayName("login() устаревший хэш пароля обновляется")
+    public void authenticate_upgrade_encoding_success() {
+        UserDetails userDetails = User.builder()
+                .username(TEST_USER_NAME)
+                .password(TEST_PASSWORD)
+                .roles(TEST_ROLE)
+                .build();
+
+        when(userDetailsService.loadUserByUsername(TEST_USER_NAME)).thenReturn(userDetails);
+        when(passwordVerifier.matches(userDetails, TEST_PASSWORD)).thenReturn(true);
+        when(passwordVerifier.upgradeEncoding(userDetails, TEST_PASSWORD))
+                .thenReturn(Optional.of(TEST_UPGRADED_PASSWORD));
+        when(tokenRegistrar.register(userDetails)).thenReturn(TEST_TOKEN);
+
+        LoginResponse loginResponse = sut.login(new LoginRequest(TEST_USER_NAME, TEST_PASSWORD));
+
+        Assertions.assertEquals(TEST_TOKEN, loginResponse.getAuthToken());
+        verify(userDetailsPasswordService).updatePassword(userDetails, TEST_UPGRADED_PASSWORD);
     }
 
     @Test
@@ -68,7 +104,7 @@ class LoginServiceImplTest {
                 .roles(TEST_ROLE)
                 .build();
         when(userDetailsService.loadUserByUsername(TEST_USER_NAME)).thenReturn(userDetails);
-        when(passwordEncoder.matches(anyString(), anyString())).thenReturn(false);
+        when(passwordVerifier.matches(any(UserDetails.class), anyString())).thenReturn(false);
 
         LoginRequest loginRequest = new LoginRequest(TEST_USER_NAME, TEST_PASSWORD);
 
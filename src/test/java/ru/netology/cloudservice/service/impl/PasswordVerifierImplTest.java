@@ -0,0 +1,143 @@
+package ru.netology.cloudservice.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import ru.netology.cloudservice.exception.ServiceOverloadedException;
+
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.Optional;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PasswordVerifierImplTest {
+    private static final String TEST_USER_NAME = "TEST_USER_NAME";
+    private static final String TEST_PASSWORD = "TEST_PASSWORD";
+    private static final String TEST_WRONG_PASSWORD = "TEST_WRONG_PASSWORD";
+    private static final String TEST_ENCODED_PASSWORD = "{test}TEST_PASSWORD";
+    private static final String TEST_UPGRADED_PASSWORD = "{bcrypt}TEST_PASSWORD";
+    private static final UserDetails TEST_USER_DETAILS = User.builder()
+            .username(TEST_USER_NAME)
+            .password(TEST_ENCODED_PASSWORD)
+            .roles("USER")
+            .build();
+
+    @Mock
+    private PasswordEncoder passwordEncoder;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private PasswordVerifierImpl sut;
+
+    @BeforeEach
+    void setUp() throws GeneralSecurityException {
+        meterRegistry = new SimpleMeterRegistry();
+        sut = new PasswordVerifierImpl(passwordEncoder, meterRegistry, Duration.ofMinutes(1), 16, 1, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sut.destroy();
+    }
+
+    @Test
+    @DisplayName("matches() повторная проверка верного пароля не вычисляет хэш")
+    void matches_cached_success() {
+        when(passwordEncoder.matches(TEST_PASSWORD, TEST_ENCODED_PASSWORD)).thenReturn(true);
+
+        assertTrue(sut.matches(TEST_USER_DETAILS, TEST_PASSWORD));
+        assertTrue(sut.matches(TEST_USER_DETAILS, TEST_PASSWORD));
+        verify(passwordEncoder, times(1)).matches(TEST_PASSWORD, TEST_ENCODED_PASSWORD);
+    }
+
+    @Test
+    @DisplayName("matches() неверный пароль не кэшируется")
+    void matches_wrong_password_failure() {
+        when(passwordEncoder.matches(TEST_WRONG_PASSWORD, TEST_ENCODED_PASSWORD)).thenReturn(false);
+
+        assertFalse(sut.matches(TEST_USER_DETAILS, TEST_WRONG_PASSWORD));
+        assertFalse(sut.matches(TEST_USER_DETAILS, TEST_WRONG_PASSWORD));
+        verify(passwordEncoder, times(2)).matches(TEST_WRONG_PASSWORD, TEST_ENCODED_PASSWORD);
+    }
+
+    @Test
+    @DisplayName("matches() без кэша всегда вычисляет хэш")
+    void matches_cache_disabled_success() throws GeneralSecurityException {
+        sut.destroy();
+        sut = new PasswordVerifierImpl(passwordEncoder, meterRegistry, Duration.ZERO, 16, 1, 1);
+        when(passwordEncoder.matches(TEST_PASSWORD, TEST_ENCODED_PASSWORD)).thenReturn(true);
+
+        assertTrue(sut.matches(TEST_USER_DETAILS, TEST_PASSWORD));
+        assertTrue(sut.matches(TEST_USER_DETAILS, TEST_PASSWORD));
+        verify(passwordEncoder, times(2)).matches(TEST_PASSWORD, TEST_ENCODED_PASSWORD);
+    }
+
+    @Test
+    @DisplayName("matches() ошибка. Очередь проверки паролей переполнена")
+    void matches_overloaded_failure() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(passwordEncoder.matches(TEST_PASSWORD, TEST_ENCODED_PASSWORD)).then(invocation -> {
+            started.countDown();
+            release.await();
+            return true;
+        });
+        ExecutorService clients = Executors.newFixedThreadPool(2);
+        try {
+            Future<Boolean> running = clients.submit(() -> sut.matches(TEST_USER_DETAILS, TEST_PASSWORD));
+            started.await();
+            Future<Boolean> queued = clients.submit(() -> sut.matches(TEST_USER_DETAILS, TEST_PASSWORD));
+            while (meterRegistry.get("password.hashing.queue.size").gauge().value() < 1) {
+                Thread.sleep(1);
+            }
+
+            assertThrows(ServiceOverloadedException.class, () -> sut.matches(TEST_USER_DETAILS, TEST_PASSWORD));
+
+            release.countDown();
+            assertTrue(running.get());
+            assertTrue(queued.get());
+            assertThat(meterRegistry.counter("password.hashing.rejected").count(), is(1.0));
+        } finally {
+            release.countDown();
+            clients.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("upgradeEncoding() устаревший хэш кодируется заново")
+    void upgradeEncoding_outdated_success() {
+        when(passwordEncoder.upgradeEncoding(TEST_ENCODED_PASSWORD)).thenReturn(true);
+        when(passwordEncoder.encode(TEST_PASSWORD)).thenReturn(TEST_UPGRADED_PASSWORD);
+
+        assertThat(sut.upgradeEncoding(TEST_USER_DETAILS, TEST_PASSWORD), is(Optional.of(TEST_UPGRADED_PASSWORD)));
+    }
+
+    @Test
+    @DisplayName("upgradeEncoding() актуальный хэш не изменяется")
+    void upgradeEncoding_actual_success() {
+        when(passwordEncoder.upgradeEncoding(TEST_ENCODED_PASSWORD)).thenReturn(false);
+
+        assertThat(sut.upgradeEncoding(TEST_USER_DETAILS, TEST_PASSWORD), is(Optional.empty()));
+        verify(passwordEncoder, never()).encode(anyString());
+    }
+}
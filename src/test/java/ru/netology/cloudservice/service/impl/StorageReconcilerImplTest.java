@@ -0,0 +1,188 @@
+package ru.netology.cloudservice.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import ru.netology.cloudservice.entity.ReconcileCursor;
+import ru.netology.cloudservice.model.projection.FileContentProjection;
+import ru.netology.cloudservice.repository.FileInfoRepository;
+import ru.netology.cloudservice.repository.ReconcileCursorRepository;
+import ru.netology.cloudservice.repository.UploadSessionRepository;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StorageReconcilerImplTest {
+    private static final String FILE_CONTENT_UID = "file_content_uid";
+    private static final String UPLOAD_CONTENT_UID = "upload_content_uid";
+    private static final String ORPHAN_CONTENT_UID = "orphan_content_uid";
+    private static final String RECENT_CONTENT_UID = "recent_content_uid";
+    private static final String PENDING_CONTENT_UID = "pending_content_uid";
+    private static final String MISSING_CONTENT_UID = "missing_content_uid";
+    private static final byte[] TEST_FILE_CONTENT = "test_file_content_bytes".getBytes();
+    private static final Duration TEST_GRACE_PERIOD = Duration.ofHours(1);
+
+    @TempDir
+    private Path rootPath;
+
+    @Mock
+    private FileInfoRepository fileInfoRepository;
+
+    @Mock
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Mock
+    private ReconcileCursorRepository reconcileCursorRepository;
+
+    private FileContentStorageFileSystemImpl fileContentStorage;
+
+    private PendingContentUids pendingContentUids;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        fileContentStorage = new FileContentStorageFileSystemImpl(rootPath, 2);
+        pendingContentUids = new PendingContentUids();
+        meterRegistry = new SimpleMeterRegistry();
+        for (String uid : List.of(FILE_CONTENT_UID, UPLOAD_CONTENT_UID, ORPHAN_CONTENT_UID)) {
+            putOld(uid);
+        }
+        fileContentStorage.put(RECENT_CONTENT_UID, new ByteArrayInputStream(TEST_FILE_CONTENT));
+
+        when(fileInfoRepository.findExistingContentUids(anyCollection())).thenReturn(List.of(FILE_CONTENT_UID));
+        when(uploadSessionRepository.findExistingIds(anyCollection())).thenReturn(List.of(UPLOAD_CONTENT_UID));
+        when(fileInfoRepository.findLiveAfter(anyLong(), any(Pageable.class)))
+                .thenReturn(List.of(file(1, FILE_CONTENT_UID), file(2, MISSING_CONTENT_UID)));
+    }
+
+    @Test
+    @DisplayName("reconcile() только отчёт о расхождениях")
+    void reconcile_report_success() {
+        var sut = createReconciler(false);
+
+        var report = sut.reconcile();
+
+        assertThat(report.getOrphanContents(), is(1L));
+        assertThat(report.getDanglingFiles(), is(1L));
+        assertThat(fileContentStorage.contains(ORPHAN_CONTENT_UID), is(true));
+        verify(fileInfoRepository, never()).markDeleted(anyCollection(), any(Instant.class));
+        assertThat(meterRegistry.counter("storage.reconcile.orphan.contents").count(), is(1.0));
+    }
+
+    @Test
+    @DisplayName("reconcile() исправление расхождений")
+    void reconcile_fix_success() {
+        var sut = createReconciler(true);
+
+        var report = sut.reconcile();
+
+        assertThat(report.isFixed(), is(true));
+        assertThat(fileContentStorage.contains(ORPHAN_CONTENT_UID), is(false));
+        assertThat(fileContentStorage.contains(RECENT_CONTENT_UID), is(true));
+        assertThat(fileContentStorage.contains(UPLOAD_CONTENT_UID), is(true));
+        verify(fileInfoRepository).markDeleted(eq(List.of(2L)), any(Instant.class));
+        assertThat(meterRegistry.find("storage.reconcile.purged.bytes").counter(), is(notNullValue()));
+    }
+
+    @Test
+    @DisplayName("reconcile() продолжает обход с сохранённых позиций")
+    void reconcile_resume_success() {
+        when(reconcileCursorRepository.findById(StorageReconcilerImpl.CONTENTS_CURSOR))
+                .thenReturn(Optional.of(new ReconcileCursor(StorageReconcilerImpl.CONTENTS_CURSOR,
+                        ORPHAN_CONTENT_UID, Instant.now())));
+        when(reconcileCursorRepository.findById(StorageReconcilerImpl.FILES_CURSOR))
+                .thenReturn(Optional.of(new ReconcileCursor(StorageReconcilerImpl.FILES_CURSOR, "1", Instant.now())));
+        var sut = createReconciler(false);
+
+        var report = sut.reconcile();
+
+        assertThat(report.getOrphanContents(), is(0L));
+        verify(fileInfoRepository).findLiveAfter(eq(1L), any(Pageable.class));
+        verify(reconcileCursorRepository).save(argThat(cursor ->
+                cursor.getName().equals(StorageReconcilerImpl.CONTENTS_CURSOR) && cursor.getLastKey() == null));
+        verify(reconcileCursorRepository).save(argThat(cursor ->
+                cursor.getName().equals(StorageReconcilerImpl.FILES_CURSOR) && cursor.getLastKey() == null));
+    }
+
+    @Test
+    @DisplayName("reconcile() не считает сиротой содержимое регистрируемой загрузки")
+    void reconcile_pending_content_skipped() throws IOException {
+        putOld(PENDING_CONTENT_UID);
+        pendingContentUids.add(PENDING_CONTENT_UID);
+        var sut = createReconciler(true);
+
+        var report = sut.reconcile();
+
+        assertThat(report.getOrphanContents(), is(1L));
+        assertThat(fileContentStorage.contains(PENDING_CONTENT_UID), is(true));
+        assertThat(fileContentStorage.contains(ORPHAN_CONTENT_UID), is(false));
+    }
+
+    @Test
+    @DisplayName("reconcile() обходит хранилище без шардирования с начала")
+    void reconcile_flat_storage_success() throws IOException {
+        fileContentStorage = new FileContentStorageFileSystemImpl(rootPath.resolve("flat"));
+        putOld(ORPHAN_CONTENT_UID);
+        var sut = createReconciler(false);
+
+        var report = sut.reconcile();
+
+        assertThat(report.getOrphanContents(), is(1L));
+        verify(reconcileCursorRepository, never()).save(argThat(cursor ->
+                cursor.getName().equals(StorageReconcilerImpl.CONTENTS_CURSOR)));
+    }
+
+    private void putOld(String uid) throws IOException {
+        fileContentStorage.put(uid, new ByteArrayInputStream(TEST_FILE_CONTENT));
+        Files.setLastModifiedTime(fileContentStorage.resolve(uid),
+                FileTime.from(Instant.now().minus(TEST_GRACE_PERIOD.multipliedBy(2))));
+    }
+
+    private StorageReconcilerImpl createReconciler(boolean fix) {
+        return new StorageReconcilerImpl(fileInfoRepository, uploadSessionRepository, reconcileCursorRepository,
+                pendingContentUids, fileContentStorage,
+                meterRegistry, fix, 10, Duration.ZERO, TEST_GRACE_PERIOD);
+    }
+
+    private static FileContentProjection file(long id, String contentUid) {
+        return new FileContentProjection() {
+            @Override
+            public long getId() {
+                return id;
+            }
+
+            @Override
+            public String getContentUid() {
+                return contentUid;
+            }
+
+            @Override
+            public long getFilesize() {
+                return TEST_FILE_CONTENT.length;
+            }
+        };
+    }
+}
@@ -0,0 +1,46 @@
+package ru.netology.cloudservice.service.impl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class TokenBucketTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final TokenBucket sut = new TokenBucket(10, 20, clock::get);
+
+    @Test
+    @DisplayName("tryConsume() не расходует токены сверх запаса")
+    void tryConsume_success() {
+        assertThat(sut.tryConsume(20), is(0L));
+        assertThat(sut.tryConsume(1), is(SECOND / 10));
+
+        clock.addAndGet(SECOND / 10);
+        assertThat(sut.tryConsume(1), is(0L));
+    }
+
+    @Test
+    @DisplayName("consume() уходит в долг и возвращает время ожидания")
+    void consume_debt_success() {
+        assertThat(sut.consume(30), is(SECOND));
+        assertThat(sut.debtNanos(), is(SECOND));
+
+        clock.addAndGet(SECOND);
+        assertThat(sut.debtNanos(), is(0L));
+    }
+
+    @Test
+    @DisplayName("Запас токенов не превышает ёмкость")
+    void refill_capacity_success() {
+        sut.consume(20);
+        clock.addAndGet(10 * SECOND);
+        assertThat(sut.tryConsume(21), is(SECOND / 10));
+    }
+}
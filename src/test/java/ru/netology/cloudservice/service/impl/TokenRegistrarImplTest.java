@@ -0,0 +1,190 @@
+package ru.netology.cloudservice.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.netology.cloudservice.entity.RegisteredToken;
+import ru.netology.cloudservice.repository.RegisteredTokenRepository;
+import ru.netology.cloudservice.service.TokenProducer;
+import ru.netology.cloudservice.service.TokenRevocationBus;
+import ru.netology.cloudservice.util.TokenDigest;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TokenRegistrarImplTest {
+    private static final String TEST_USER_NAME = "TEST_USER_NAME";
+    private static final String TEST_TOKEN = "TEST-TOKEN-VALUE";
+    private static final String TEST_TOKEN_DIGEST = TokenDigest.of(TEST_TOKEN);
+    private static final long TEST_CACHE_SIZE = 16;
+    private static final int TEST_PURGE_BATCH_SIZE = 2;
+
+    @Mock
+    private TokenProducer tokenProducer;
+
+    @Mock
+    private RegisteredTokenRepository registeredTokenRepository;
+
+    private TokenRevocationBusLocalImpl tokenRevocationBus;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private TokenRegistrarImpl sut;
+
+    @BeforeEach
+    void setUp() {
+        tokenRevocationBus = new TokenRevocationBusLocalImpl();
+        meterRegistry = new SimpleMeterRegistry();
+        sut = new TokenRegistrarImpl(tokenProducer, registeredTokenRepository, tokenRevocationBus,
+                meterRegistry, TEST_CACHE_SIZE, TEST_PURGE_BATCH_SIZE);
+    }
+
+    @Test
+    @DisplayName("isRegistered() зарегистрированный токен проверяется без обращения к БД")
+    void isRegistered_after_register_cached_success() {
+        UserDetails userDetails = User.withUsername(TEST_USER_NAME).password("").roles("USER").build();
+        Instant issuedAt = Instant.now();
+        when(tokenProducer.generateToken(userDetails)).thenReturn(new OAuth2AccessToken(
+                OAuth2AccessToken.TokenType.BEARER, TEST_TOKEN, issuedAt, issuedAt.plus(1, ChronoUnit.HOURS)));
+
+        sut.register(userDetails);
+
+        assertTrue(sut.isRegistered(TEST_TOKEN));
+        verify(registeredTokenRepository, never()).findById(TEST_TOKEN_DIGEST);
+    }
+
+    @Test
+    @DisplayName("isRegistered() токен из БД кэшируется")
+    void isRegistered_loaded_once_success() {
+        when(registeredTokenRepository.findById(TEST_TOKEN_DIGEST)).thenReturn(Optional.of(createRegisteredToken(1)));
+
+        assertTrue(sut.isRegistered(TEST_TOKEN));
+        assertTrue(sut.isRegistered(TEST_TOKEN));
+        verify(registeredTokenRepository, times(1)).findById(TEST_TOKEN_DIGEST);
+    }
+
+    @Test
+    @DisplayName("isRegistered() просроченный токен не регистрирован")
+    void isRegistered_expired_failure() {
+        when(registeredTokenRepository.findById(TEST_TOKEN_DIGEST)).thenReturn(Optional.of(createRegisteredToken(-1)));
+
+        assertFalse(sut.isRegistered(TEST_TOKEN));
+    }
+
+    @Test
+    @DisplayName("revoke() удаляет токен из кэша")
+    void revoke_invalidates_cache_success() {
+        RegisteredToken registeredToken = createRegisteredToken(1);
+        when(registeredTokenRepository.findById(TEST_TOKEN_DIGEST))
+                .thenReturn(Optional.of(registeredToken))
+                .thenReturn(Optional.empty());
+        when(registeredTokenRepository.findFirstByLoginAndTokenDigest(TEST_USER_NAME, TEST_TOKEN_DIGEST))
+                .thenReturn(Optional.of(registeredToken));
+
+        assertTrue(sut.isRegistered(TEST_TOKEN));
+        sut.revoke(TEST_USER_NAME, TEST_TOKEN);
+
+        assertFalse(sut.isRegistered(TEST_TOKEN));
+        verify(registeredTokenRepository).delete(registeredToken);
+    }
+
+    @Test
+    @DisplayName("revoke() удаляет токен из кэша только после фиксации транзакции")
+    void revoke_invalidates_cache_after_commit_success() {
+        RegisteredToken registeredToken = createRegisteredToken(1);
+        when(registeredTokenRepository.findById(TEST_TOKEN_DIGEST))
+                .thenReturn(Optional.of(registeredToken))
+                .thenReturn(Optional.empty());
+        when(registeredTokenRepository.findFirstByLoginAndTokenDigest(TEST_USER_NAME, TEST_TOKEN_DIGEST))
+                .thenReturn(Optional.of(registeredToken));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            assertTrue(sut.isRegistered(TEST_TOKEN));
+            sut.revoke(TEST_USER_NAME, TEST_TOKEN);
+            assertTrue(sut.isRegistered(TEST_TOKEN));
+
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertFalse(sut.isRegistered(TEST_TOKEN));
+    }
+
+    @Test
+    @DisplayName("revoke() ошибка оповещения других узлов не прерывает отзыв")
+    void revoke_publish_failure_ignored_success() {
+        TokenRevocationBus failingBus = mock(TokenRevocationBus.class);
+        doThrow(new IllegalStateException("NOTIFY failed")).when(failingBus).publish(TEST_TOKEN_DIGEST);
+        sut = new TokenRegistrarImpl(tokenProducer, registeredTokenRepository, failingBus,
+                meterRegistry, TEST_CACHE_SIZE, TEST_PURGE_BATCH_SIZE);
+        RegisteredToken registeredToken = createRegisteredToken(1);
+        when(registeredTokenRepository.findById(TEST_TOKEN_DIGEST))
+                .thenReturn(Optional.of(registeredToken))
+                .thenReturn(Optional.empty());
+        when(registeredTokenRepository.findFirstByLoginAndTokenDigest(TEST_USER_NAME, TEST_TOKEN_DIGEST))
+                .thenReturn(Optional.of(registeredToken));
+
+        assertTrue(sut.isRegistered(TEST_TOKEN));
+        sut.revoke(TEST_USER_NAME, TEST_TOKEN);
+
+        assertFalse(sut.isRegistered(TEST_TOKEN));
+        verify(failingBus).publish(TEST_TOKEN_DIGEST);
+    }
+
+    @Test
+    @DisplayName("isRegistered() токен, отозванный на другом узле, удаляется из кэша")
+    void isRegistered_revoked_on_other_node_failure() {
+        when(registeredTokenRepository.findById(TEST_TOKEN_DIGEST))
+                .thenReturn(Optional.of(createRegisteredToken(1)))
+                .thenReturn(Optional.empty());
+
+        assertTrue(sut.isRegistered(TEST_TOKEN));
+        tokenRevocationBus.publish(TEST_TOKEN_DIGEST);
+
+        assertFalse(sut.isRegistered(TEST_TOKEN));
+    }
+
+    @Test
+    @DisplayName("purgeExpired() удаляет просроченные токены пакетами")
+    void purgeExpired_batches_success() {
+        when(registeredTokenRepository.findExpiredTokens(any(Instant.class), any(Pageable.class)))
+                .thenReturn(List.of("first", "second"))
+                .thenReturn(List.of("third"));
+
+        long purged = sut.purgeExpired();
+
+        assertThat(purged, is(3L));
+        verify(registeredTokenRepository).deleteAllByIdInBatch(List.of("first", "second"));
+        verify(registeredTokenRepository).deleteAllByIdInBatch(List.of("third"));
+        assertThat(meterRegistry.counter("tokens.purged").count(), is(3.0));
+        assertThat(meterRegistry.timer("tokens.purge.duration").count(), is(1L));
+    }
+
+    private static RegisteredToken createRegisteredToken(long validHours) {
+        Instant issuedAt = Instant.now();
+        return new RegisteredToken(TEST_TOKEN_DIGEST, TEST_USER_NAME, issuedAt, issuedAt.plus(validHours, ChronoUnit.HOURS));
+    }
+}
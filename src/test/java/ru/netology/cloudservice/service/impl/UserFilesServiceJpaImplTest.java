@@ -1,29 +1,41 @@
 package ru.netology.cloudservice.service.impl;
 
 import org.instancio.Instancio;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.transaction.support.TransactionOperations;
 import ru.netology.cloudservice.entity.FileInfo;
 import ru.netology.cloudservice.entity.UserEntity;
+import ru.netology.cloudservice.exception.FileConflictException;
 import ru.netology.cloudservice.model.dto.FileInfoDto;
+import ru.netology.cloudservice.model.projection.FileInfoProjection;
 import ru.netology.cloudservice.repository.FileInfoRepository;
 import ru.netology.cloudservice.repository.UserRepository;
 import ru.netology.cloudservice.service.FileContentStorage;
+import ru.netology.cloudservice.service.UserIdResolver;
 
+import javax.validation.ValidationException;
 import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.FileAlreadyExistsException;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static java.time.Instant.now;
 import static java.time.temporal.ChronoUnit.HOURS;
@@ -44,7 +56,6 @@ class UserFilesServiceJpaImplTest {
     private static final byte[] TEST_FILE_CONTENT = "test_file_content".getBytes();
     private static final int TEST_FILE_CONTENT_SIZE = TEST_FILE_CONTENT.length;
     private static final int TEST_FILES_LIMIT = 3;
-    private static final int DEFAULT_FILE_LIST_SIZE = 10;
     private static final FileInfo TEST_FILE_INFO = new FileInfo(
             1L, mock(UserEntity.class), TEST_FILE_NAME, TEST_FILE_CONTENT_SIZE, TEST_FILE_HASH,
             TEST_FILE_UID, now(), now().plus(24, HOURS));
@@ -52,6 +63,9 @@ class UserFilesServiceJpaImplTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private UserIdResolver userIdResolver;
+
     @Mock
     private FileInfoRepository fileInfoRepository;
 
@@ -61,35 +75,60 @@ class UserFilesServiceJpaImplTest {
     @Captor
     private ArgumentCaptor<FileInfo> fileInfoArgumentCaptor;
 
-    @InjectMocks
     private UserFilesServiceJpaImpl sut;
 
+    private final PendingContentUids pendingContentUids = new PendingContentUids();
+
+    @BeforeEach
+    void setUp() {
+        sut = new UserFilesServiceJpaImpl(userRepository, userIdResolver, fileInfoRepository, fileContentStorage,
+                TransactionOperations.withoutTransaction(), pendingContentUids);
+        lenient().when(userIdResolver.resolve(TEST_USER_NAME)).thenReturn(TEST_USER_ID);
+    }
+
     @Test
-    @DisplayName("findFilesList() успешный возврат пустого списка")
-    void findFilesList_empty_success() {
-        when(fileInfoRepository.findAllByOwnerUsernameAndDeletedAtIsNull(TEST_USER_NAME))
+    @DisplayName("findFilesPage() успешный возврат пустого списка")
+    void findFilesPage_empty_success() {
+        when(fileInfoRepository.findPage(TEST_USER_ID, PageRequest.ofSize(TEST_FILES_LIMIT + 1)))
                 .thenReturn(Collections.emptyList());
-        var result = sut.findFilesList(TEST_USER_NAME, TEST_FILES_LIMIT);
-        assertThat(result, emptyCollectionOf(FileInfoDto.class));
+        var result = sut.findFilesPage(TEST_USER_NAME, TEST_FILES_LIMIT, null);
+        assertThat(result.getFiles(), emptyCollectionOf(FileInfoDto.class));
+        assertThat(result.getNextCursor(), nullValue());
     }
 
     @Test
-    @DisplayName("findFilesList() успешный возврат списка файлов")
-    void findFilesList_success() {
+    @DisplayName("findFilesPage() успешный возврат списка файлов и курсора следующей страницы")
+    void findFilesPage_success() {
         var testFilesList = Instancio.ofList(FileInfo.class)
-                .size(DEFAULT_FILE_LIST_SIZE)
+                .size(TEST_FILES_LIMIT + 1)
                 .set(field(FileInfo::getDeletedAt), null)
-                .create();
-        when(fileInfoRepository.findAllByOwnerUsernameAndDeletedAtIsNull(TEST_USER_NAME))
+                .create()
+                .stream()
+                .map(UserFilesServiceJpaImplTest::toProjection)
+                .collect(Collectors.toList());
+        when(fileInfoRepository.findPage(TEST_USER_ID, PageRequest.ofSize(TEST_FILES_LIMIT + 1)))
                 .thenReturn(testFilesList);
-        var result = sut.findFilesList(TEST_USER_NAME, TEST_FILES_LIMIT);
-        assertThat(result, hasSize(3));
+        var result = sut.findFilesPage(TEST_USER_NAME, TEST_FILES_LIMIT, null);
+        assertThat(result.getFiles(), hasSize(TEST_FILES_LIMIT));
+        assertThat(result.getNextCursor(), notNullValue());
+
+        var lastFile = testFilesList.get(TEST_FILES_LIMIT - 1);
+        sut.findFilesPage(TEST_USER_NAME, TEST_FILES_LIMIT, result.getNextCursor());
+        verify(fileInfoRepository).findPageAfter(TEST_USER_ID, lastFile.getFilename(), lastFile.getId(),
+                PageRequest.ofSize(TEST_FILES_LIMIT + 1));
+    }
+
+    @Test
+    @DisplayName("findFilesPage() ошибка. Неверный курсор")
+    void findFilesPage_invalid_cursor_failure() {
+        assertThrows(ValidationException.class, () ->
+                sut.findFilesPage(TEST_USER_NAME, TEST_FILES_LIMIT, "?invalid?"));
     }
 
     @Test
     @DisplayName("findFileInfo() ошибка. Файл не найден")
     void findFileInfo_not_found_failure() {
-        when(fileInfoRepository.findFirstByOwnerUsernameAndFilenameAndDeletedAtIsNull(TEST_USER_NAME, TEST_FILE_NAME))
+        when(fileInfoRepository.findProjectionByOwnerIdAndFilenameAndDeletedAtIsNull(TEST_USER_ID, TEST_FILE_NAME))
                 .thenReturn(Optional.empty());
         var result = sut.findFileInfo(TEST_USER_NAME, TEST_FILE_NAME);
         assertThat(result.isEmpty(), is(true));
@@ -98,8 +137,8 @@ class UserFilesServiceJpaImplTest {
     @Test
     @DisplayName("findFileInfo() успешный возврат файла")
     void findFileInfo_success() {
-        when(fileInfoRepository.findFirstByOwnerUsernameAndFilenameAndDeletedAtIsNull(TEST_USER_NAME, TEST_FILE_NAME))
-                .thenReturn(Optional.of(TEST_FILE_INFO));
+        when(fileInfoRepository.findProjectionByOwnerIdAndFilenameAndDeletedAtIsNull(TEST_USER_ID, TEST_FILE_NAME))
+                .thenReturn(Optional.of(toProjection(TEST_FILE_INFO)));
         var result = sut.findFileInfo(TEST_USER_NAME, TEST_FILE_NAME).orElseThrow();
         assertThat(result.getFilename(), equalTo(TEST_FILE_NAME));
         assertThat(result.getHash(), equalTo(TEST_FILE_HASH));
@@ -116,7 +155,7 @@ class UserFilesServiceJpaImplTest {
     @DisplayName("deleteFile() успешное удаление")
     void deleteFile_success() throws IOException {
         var fileInfoEntityMock = mock(FileInfo.class);
-        when(fileInfoRepository.findFirstByOwnerUsernameAndFilenameAndDeletedAtIsNull(TEST_USER_NAME, TEST_FILE_NAME))
+        when(fileInfoRepository.findFirstByOwnerIdAndFilenameAndDeletedAtIsNull(TEST_USER_ID, TEST_FILE_NAME))
                 .thenReturn(Optional.of(fileInfoEntityMock));
         sut.deleteFile(TEST_USER_NAME, TEST_FILE_NAME);
         verify(fileInfoEntityMock).setDeleted(true);
@@ -132,9 +171,9 @@ class UserFilesServiceJpaImplTest {
     @Test
     @DisplayName("renameFile() ошибка. Файл уже существует")
     void renameFile_already_exist_failure() {
-        when(fileInfoRepository.findFirstByOwnerUsernameAndFilenameAndDeletedAtIsNull(TEST_USER_NAME, TEST_FILE_NAME))
+        when(fileInfoRepository.findFirstByOwnerIdAndFilenameAndDeletedAtIsNull(TEST_USER_ID, TEST_FILE_NAME))
                 .thenReturn(Optional.of(TEST_FILE_INFO));
-        when(fileInfoRepository.findFirstByOwnerUsernameAndFilenameAndDeletedAtIsNull(TEST_USER_NAME, TEST_NEW_FILE_NAME))
+        when(fileInfoRepository.findFirstByOwnerIdAndFilenameAndDeletedAtIsNull(TEST_USER_ID, TEST_NEW_FILE_NAME))
                 .thenReturn(Optional.of(mock(FileInfo.class)));
         assertThrows(FileAlreadyExistsException.class, () ->
                 sut.renameFile(TEST_USER_NAME, TEST_FILE_NAME, TEST_NEW_FILE_NAME));
@@ -144,9 +183,9 @@ class UserFilesServiceJpaImplTest {
     @DisplayName("renameFile() успешное переименование")
     void renameFile_success() throws IOException {
         var fileInfoEntityMock = mock(FileInfo.class);
-        when(fileInfoRepository.findFirstByOwnerUsernameAndFilenameAndDeletedAtIsNull(TEST_USER_NAME, TEST_FILE_NAME))
+        when(fileInfoRepository.findFirstByOwnerIdAndFilenameAndDeletedAtIsNull(TEST_USER_ID, TEST_FILE_NAME))
                 .thenReturn(Optional.of(fileInfoEntityMock));
-        when(fileInfoRepository.findFirstByOwnerUsernameAndFilenameAndDeletedAtIsNull(TEST_USER_NAME, TEST_NEW_FILE_NAME))
+        when(fileInfoRepository.findFirstByOwnerIdAndFilenameAndDeletedAtIsNull(TEST_USER_ID, TEST_NEW_FILE_NAME))
                 .thenReturn(Optional.empty());
         sut.renameFile(TEST_USER_NAME, TEST_FILE_NAME, TEST_NEW_FILE_NAME);
         verify(fileInfoEntityMock).setFilename(TEST_NEW_FILE_NAME);
@@ -164,9 +203,9 @@ class UserFilesServiceJpaImplTest {
         var fileInfoEntityMock = mock(FileInfo.class);
         when(fileInfoEntityMock.getContentUid()).thenReturn(TEST_FILE_UID);
         when(fileInfoEntityMock.getHash()).thenReturn(TEST_FILE_HASH);
-        when(fileInfoRepository.findFirstByOwnerUsernameAndFilenameAndDeletedAtIsNull(TEST_USER_NAME, TEST_FILE_NAME))
+        when(fileInfoRepository.findFirstByOwnerIdAndFilenameAndDeletedAtIsNull(TEST_USER_ID, TEST_FILE_NAME))
                 .thenReturn(Optional.of(fileInfoEntityMock));
-        when(fileContentStorage.get(TEST_FILE_UID)).thenReturn(new ByteArrayInputStream(TEST_FILE_CONTENT));
+        when(fileContentStorage.getResource(TEST_FILE_UID)).thenReturn(new ByteArrayResource(TEST_FILE_CONTENT));
 
         var result = sut.openFile(TEST_USER_NAME, TEST_FILE_NAME);
 
@@ -177,6 +216,7 @@ class UserFilesServiceJpaImplTest {
     @Test
     @DisplayName("saveFile() ошибка. Пользователь не найден.")
     void saveFile_user_not_found_failure() {
+        when(userIdResolver.resolve(TEST_USER_NAME)).thenThrow(new UsernameNotFoundException(TEST_USER_NAME));
         assertThrows(UsernameNotFoundException.class, () ->
                 sut.saveFile(TEST_USER_NAME, TEST_FILE_NAME, TEST_FILE_HASH,
                         new ByteArrayInputStream(TEST_FILE_CONTENT)
@@ -189,8 +229,7 @@ class UserFilesServiceJpaImplTest {
     void saveFile_success() throws IOException {
         var contentInputStream = new ByteArrayInputStream(TEST_FILE_CONTENT);
 
-        when(userRepository.findIdByUsername(TEST_USER_NAME)).thenReturn(Optional.of(TEST_USER_ID));
-        when(fileInfoRepository.findAllByOwnerUsernameAndFilenameAndDeletedAtIsNull(TEST_USER_NAME, TEST_FILE_NAME))
+        when(fileInfoRepository.findAllByOwnerIdAndFilenameAndDeletedAtIsNull(TEST_USER_ID, TEST_FILE_NAME))
                 .thenReturn(Collections.emptyList());
         when(fileContentStorage.put(anyString(), Mockito.any(InputStream.class)))
                 .thenReturn((long) TEST_FILE_CONTENT_SIZE);
@@ -207,14 +246,69 @@ class UserFilesServiceJpaImplTest {
         assertThat(capturedFileInfo.getContentUid(), not(blankOrNullString()));
     }
 
+    @Test
+    @DisplayName("saveFile() содержимое помечено регистрируемым до регистрации файла")
+    void saveFile_content_pending_success() throws IOException {
+        var pendingUids = new ArrayList<String>();
+        when(fileInfoRepository.findAllByOwnerIdAndFilenameAndDeletedAtIsNull(TEST_USER_ID, TEST_FILE_NAME))
+                .thenReturn(Collections.emptyList());
+        when(fileContentStorage.put(anyString(), Mockito.any(InputStream.class))).thenAnswer(invocation -> {
+            String uid = invocation.getArgument(0);
+            if (pendingContentUids.contains(uid)) pendingUids.add(uid);
+            return (long) TEST_FILE_CONTENT_SIZE;
+        });
+
+        sut.saveFile(TEST_USER_NAME, TEST_FILE_NAME, TEST_FILE_HASH, new ByteArrayInputStream(TEST_FILE_CONTENT));
+
+        assertThat(pendingUids.size(), is(1));
+        assertThat(pendingContentUids.contains(pendingUids.get(0)), is(false));
+    }
+
+    @Test
+    @DisplayName("saveFile() ошибка регистрации файла удаляет сохраненное содержимое")
+    void saveFile_register_failure_removes_content() throws IOException {
+        when(fileInfoRepository.findAllByOwnerIdAndFilenameAndDeletedAtIsNull(TEST_USER_ID, TEST_FILE_NAME))
+                .thenReturn(Collections.emptyList());
+        when(fileContentStorage.put(anyString(), Mockito.any(InputStream.class)))
+                .thenReturn((long) TEST_FILE_CONTENT_SIZE);
+        when(fileInfoRepository.save(Mockito.any(FileInfo.class))).thenThrow(new IllegalStateException());
+
+        assertThrows(IllegalStateException.class, () -> sut.saveFile(TEST_USER_NAME, TEST_FILE_NAME,
+                TEST_FILE_HASH, new ByteArrayInputStream(TEST_FILE_CONTENT)));
+
+        verify(fileContentStorage).remove(anyString());
+    }
+
+    @Test
+    @DisplayName("renameFile() ошибка. Имя занято параллельным запросом")
+    void renameFile_live_filename_conflict_failure() {
+        when(fileInfoRepository.findFirstByOwnerIdAndFilenameAndDeletedAtIsNull(TEST_USER_ID, TEST_FILE_NAME))
+                .thenReturn(Optional.of(mock(FileInfo.class)));
+        doThrow(new DataIntegrityViolationException("duplicate", new ConstraintViolationException(
+                "duplicate", null, FileInfoRepository.LIVE_FILENAME_INDEX))).when(fileInfoRepository).flush();
+
+        assertThrows(FileConflictException.class,
+                () -> sut.renameFile(TEST_USER_NAME, TEST_FILE_NAME, TEST_NEW_FILE_NAME));
+    }
+
+    @Test
+    @DisplayName("renameFile() ошибка. Другие нарушения ограничений не считаются конфликтом")
+    void renameFile_other_integrity_violation_failure() {
+        when(fileInfoRepository.findFirstByOwnerIdAndFilenameAndDeletedAtIsNull(TEST_USER_ID, TEST_FILE_NAME))
+                .thenReturn(Optional.of(mock(FileInfo.class)));
+        doThrow(new DataIntegrityViolationException("not null")).when(fileInfoRepository).flush();
+
+        assertThrows(DataIntegrityViolationException.class,
+                () -> sut.renameFile(TEST_USER_NAME, TEST_FILE_NAME, TEST_NEW_FILE_NAME));
+    }
+
     @Test
     @DisplayName("saveFile() успешная перезапись")
     void saveFile_overwrite_success() throws IOException {
         var contentInputStream = new ByteArrayInputStream(TEST_FILE_CONTENT);
         var oldFileInfoMock = mock(FileInfo.class);
 
-        when(userRepository.findIdByUsername(TEST_USER_NAME)).thenReturn(Optional.of(TEST_USER_ID));
-        when(fileInfoRepository.findAllByOwnerUsernameAndFilenameAndDeletedAtIsNull(TEST_USER_NAME, TEST_FILE_NAME))
+        when(fileInfoRepository.findAllByOwnerIdAndFilenameAndDeletedAtIsNull(TEST_USER_ID, TEST_FILE_NAME))
                 .thenReturn(List.of(oldFileInfoMock));
         when(fileContentStorage.put(anyString(), Mockito.any(InputStream.class)))
                 .thenReturn((long) TEST_FILE_CONTENT_SIZE);
@@ -232,5 +326,27 @@ class UserFilesServiceJpaImplTest {
         assertThat(capturedFileInfo.getContentUid(), not(blankOrNullString()));
     }
 
-
-}
\ No newline at end of file
+    private static FileInfoProjection toProjection(FileInfo fileInfo) {
+        return new FileInfoProjection() {
+            @Override
+            public long getId() {
+                return fileInfo.getId();
+            }
+
+            @Override
+            public String getFilename() {
+                return fileInfo.getFilename();
+            }
+
+            @Override
+            public long getFilesize() {
+                return fileInfo.getFilesize();
+            }
+
+            @Override
+            public String getHash() {
+                return fileInfo.getHash();
+            }
+        };
+    }
+}
@@ -0,0 +1,64 @@
+package ru.netology.cloudservice.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import ru.netology.cloudservice.repository.UserRepository;
+
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserIdResolverCachingImplTest {
+    private static final long TEST_USER_ID = 1L;
+    private static final String TEST_USER_NAME = "test_user";
+    private static final long TEST_CACHE_SIZE = 16;
+
+    @Mock
+    private UserRepository userRepository;
+
+    private UserIdResolverCachingImpl sut;
+
+    @BeforeEach
+    void setUp() {
+        sut = new UserIdResolverCachingImpl(userRepository, TEST_CACHE_SIZE);
+    }
+
+    @Test
+    @DisplayName("resolve() id пользователя загружается один раз")
+    void resolve_cached_success() {
+        when(userRepository.findIdByUsername(TEST_USER_NAME)).thenReturn(Optional.of(TEST_USER_ID));
+
+        assertThat(sut.resolve(TEST_USER_NAME), is(TEST_USER_ID));
+        assertThat(sut.resolve(TEST_USER_NAME), is(TEST_USER_ID));
+        verify(userRepository, times(1)).findIdByUsername(TEST_USER_NAME);
+    }
+
+    @Test
+    @DisplayName("resolve() ошибка пользователь не найден")
+    void resolve_not_found_failure() {
+        when(userRepository.findIdByUsername(TEST_USER_NAME)).thenReturn(Optional.empty());
+
+        assertThrows(UsernameNotFoundException.class, () -> sut.resolve(TEST_USER_NAME));
+    }
+
+    @Test
+    @DisplayName("evict() id пользователя загружается заново")
+    void evict_success() {
+        when(userRepository.findIdByUsername(TEST_USER_NAME)).thenReturn(Optional.of(TEST_USER_ID));
+
+        sut.resolve(TEST_USER_NAME);
+        sut.evict(TEST_USER_NAME);
+        sut.resolve(TEST_USER_NAME);
+
+        verify(userRepository, times(2)).findIdByUsername(TEST_USER_NAME);
+    }
+}
@@ -0,0 +1,89 @@
+package ru.netology.cloudservice.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.util.unit.DataSize;
+import ru.netology.cloudservice.config.RateLimitProperties;
+import ru.netology.cloudservice.exception.TooManyRequestsException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UserRateLimiterImplTest {
+    private static final String TEST_USER_NAME = "TEST_USER_NAME";
+    private static final String PREMIUM_USER_NAME = "PREMIUM_USER_NAME";
+    private static final String PREMIUM_AUTHORITY = "ROLE_PREMIUM";
+    private static final byte[] TEST_FILE_CONTENT = new byte[2048];
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private UserRateLimiterImpl sut;
+
+    @BeforeEach
+    void setUp() {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.getDefaults().setRequestsPerSecond(1);
+        properties.getDefaults().setRequestBurst(2);
+        properties.getDefaults().setBytesPerSecond(DataSize.ofKilobytes(1));
+        properties.getDefaults().setByteBurst(DataSize.ofKilobytes(1));
+        RateLimitProperties.Limit premium = new RateLimitProperties.Limit();
+        premium.setRequestsPerSecond(100);
+        premium.setRequestBurst(100);
+        properties.getAuthorities().put(PREMIUM_AUTHORITY, premium);
+        sut = new UserRateLimiterImpl(properties, 16, clock::get);
+    }
+
+    @Test
+    @DisplayName("acquireRequest() ошибка превышена частота запросов")
+    void acquireRequest_rate_failure() {
+        Principal principal = createPrincipal(TEST_USER_NAME, "ROLE_USER");
+        sut.acquireRequest(principal);
+        sut.acquireRequest(principal);
+
+        TooManyRequestsException exception =
+                assertThrows(TooManyRequestsException.class, () -> sut.acquireRequest(principal));
+        assertThat(exception.getRetryAfter(), is(Duration.ofSeconds(1)));
+    }
+
+    @Test
+    @DisplayName("acquireRequest() лимиты берутся по полномочиям пользователя")
+    void acquireRequest_authority_limit_success() {
+        Principal principal = createPrincipal(PREMIUM_USER_NAME, PREMIUM_AUTHORITY);
+        for (int i = 0; i < 100; i++) {
+            sut.acquireRequest(principal);
+        }
+        assertThrows(TooManyRequestsException.class, () -> sut.acquireRequest(principal));
+    }
+
+    @Test
+    @DisplayName("acquireRequest() ошибка пока не отработан долг по трафику")
+    void acquireRequest_bandwidth_failure() throws IOException {
+        Principal principal = createPrincipal(TEST_USER_NAME, "ROLE_USER");
+        clock.addAndGet(Duration.ofSeconds(1).toNanos());
+        try (InputStream inputStream = sut.limit(principal, new ByteArrayInputStream(TEST_FILE_CONTENT))) {
+            clock.addAndGet(Duration.ofSeconds(1).toNanos());
+            inputStream.readNBytes(TEST_FILE_CONTENT.length / 2);
+            inputStream.readNBytes(TEST_FILE_CONTENT.length / 2);
+        }
+
+        assertThrows(TooManyRequestsException.class, () -> sut.acquireRequest(principal));
+        clock.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertDoesNotThrow(() -> sut.acquireRequest(principal));
+    }
+
+    private static Principal createPrincipal(String userName, String authority) {
+        return new UsernamePasswordAuthenticationToken(userName, null, AuthorityUtils.createAuthorityList(authority));
+    }
+}